@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package informiz.org.chaincode.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.FactCheckerContract;
+import informiz.org.chaincode.HypothesisContract;
+import informiz.org.chaincode.InMemoryLedger;
+import informiz.org.chaincode.InMemoryStub;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.FactChecker;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.state.ReviewStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole transactions, from context creation to commit, on an in-memory ledger where the measured hypothesis has a
+ * realistic number of reviews.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContractBenchmark {
+
+    @Param({"0", "10", "1000", "10000"})
+    public int reviews;
+
+    private final HypothesisContract hypotheses = new HypothesisContract();
+
+    private final FactCheckerContract factCheckers = new FactCheckerContract();
+
+    private InMemoryLedger ledger;
+
+    private String hid;
+
+    private String fcid;
+
+    private String factCheckerInfo;
+
+    private int counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        ledger = new InMemoryLedger();
+        hid = ledger.submit(hypotheses, "createHypothesis",
+                (ctx) -> hypotheses.createHypothesis(ctx, "The earth is round", "en_US")).getHid();
+        fcid = ledger.submit(factCheckers, "createFactChecker", (ctx) -> factCheckers.createFactChecker(ctx,
+                "Jane Doe", "0.9", "0.8", "jane@informiz.org", "https://informiz.org/jane")).getFcid();
+
+        InMemoryStub stub = ledger.newTransaction("submitReviews");
+        for (int i = 0; i < reviews; i++) {
+            ReviewStore.putReview(stub, ContractType.HYPOTHESIS, hid, reviewer(i), (i % 100) / 100f);
+        }
+        ledger.commit(stub);
+        ledger.submit(hypotheses, "refreshHypothesisScore", (ctx) -> hypotheses.refreshHypothesisScore(ctx, hid));
+
+        FactChecker info = FactChecker.createFactChecker(fcid, "Jane A. Doe", Utils.createScore("0.9", "0.8"));
+        info.setEmail("jane.doe@informiz.org");
+        info.setLink("https://informiz.org/jane-doe");
+        factCheckerInfo = new ObjectMapper().writeValueAsString(info);
+    }
+
+    private static String reviewer(final int i) {
+        return "FACT_CHECKER-tx" + i + "-0";
+    }
+
+    @Benchmark
+    public Hypothesis createHypothesis() {
+        return ledger.submit(hypotheses, "createHypothesis",
+                (ctx) -> hypotheses.createHypothesis(ctx, "The moon is made of cheese", "en_US"));
+    }
+
+    /**
+     * Updates the existing reviews of the hypothesis in turn (or a single review, when there are none)
+     */
+    @Benchmark
+    public Review addOrUpdateReview() {
+        String reviewer = reviewer(counter++ % Math.max(reviews, 1));
+        return ledger.submit(hypotheses, "addOrUpdateReview",
+                (ctx) -> hypotheses.addOrUpdateReview(ctx, hid, reviewer, "0.75"));
+    }
+
+    @Benchmark
+    public FactChecker updateFactCheckerInfo() {
+        return ledger.submit(factCheckers, "updateFactCheckerInfo",
+                (ctx) -> factCheckers.updateFactCheckerInfo(ctx, fcid, factCheckerInfo));
+    }
+
+    @Benchmark
+    public Hypothesis queryHypothesis() {
+        return ledger.evaluate(hypotheses, "queryHypothesis", (ctx) -> hypotheses.queryHypothesis(ctx, hid));
+    }
+}
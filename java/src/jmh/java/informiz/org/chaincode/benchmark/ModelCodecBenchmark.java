@@ -0,0 +1,160 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package informiz.org.chaincode.benchmark;
+
+import informiz.org.chaincode.model.FactChecker;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.ReferenceText;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Source;
+import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.state.StateCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of every model in both state formats. Reviewed models are measured with review maps of
+ * realistic sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelCodecBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Reviewed {
+
+        @Param({"0", "10", "1000", "10000"})
+        public int reviews;
+
+        @Param({"JSON", "CBOR"})
+        public StateCodec.Format format;
+
+        StateCodec codec;
+
+        Hypothesis hypothesis;
+
+        Source source;
+
+        ReferenceText refText;
+
+        byte[] hypothesisState;
+
+        byte[] sourceState;
+
+        byte[] refTextState;
+
+        @Setup
+        public void setUp() throws IOException {
+            codec = new StateCodec(format);
+            hypothesis = Hypothesis.createHypothesis("HYPOTHESIS-tx1-0", "The earth is round", Locale.US);
+            source = Source.createSource("SOURCE-tx1-0", "www.nasa.gov", Utils.createScore("0.9", "0.8"));
+            refText = ReferenceText.createRefText("REF_TEXT-tx1-0", "Photos from the ISS", source.getSid(),
+                    "https://www.nasa.gov/iss", Locale.US);
+            for (int i = 0; i < reviews; i++) {
+                float reliability = (i % 100) / 100f;
+                hypothesis.addReview("FACT_CHECKER-tx" + i + "-0", reliability);
+                source.addReview("FACT_CHECKER-tx" + i + "-0", reliability);
+                refText.addReview("FACT_CHECKER-tx" + i + "-0", reliability);
+            }
+            hypothesisState = codec.encode(hypothesis);
+            sourceState = codec.encode(source);
+            refTextState = codec.encode(refText);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Unreviewed {
+
+        @Param({"JSON", "CBOR"})
+        public StateCodec.Format format;
+
+        StateCodec codec;
+
+        FactChecker factChecker;
+
+        ReviewStatistics statistics;
+
+        byte[] factCheckerState;
+
+        byte[] statisticsState;
+
+        @Setup
+        public void setUp() throws IOException {
+            codec = new StateCodec(format);
+            factChecker = FactChecker.createFactChecker("FACT_CHECKER-tx1-0", "Jane Doe",
+                    Utils.createScore("0.9", "0.8"));
+            factChecker.setEmail("jane@informiz.org");
+            factChecker.setLink("https://informiz.org/jane");
+            statistics = ReviewStatistics.change(null, 0.7f);
+            factCheckerState = codec.encode(factChecker);
+            statisticsState = codec.encode(statistics);
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeHypothesis(final Reviewed state) throws IOException {
+        return state.codec.encode(state.hypothesis);
+    }
+
+    @Benchmark
+    public Hypothesis decodeHypothesis(final Reviewed state) throws IOException {
+        return state.codec.decode(state.hypothesisState, Hypothesis.class);
+    }
+
+    @Benchmark
+    public byte[] encodeSource(final Reviewed state) throws IOException {
+        return state.codec.encode(state.source);
+    }
+
+    @Benchmark
+    public Source decodeSource(final Reviewed state) throws IOException {
+        return state.codec.decode(state.sourceState, Source.class);
+    }
+
+    @Benchmark
+    public byte[] encodeReferenceText(final Reviewed state) throws IOException {
+        return state.codec.encode(state.refText);
+    }
+
+    @Benchmark
+    public ReferenceText decodeReferenceText(final Reviewed state) throws IOException {
+        return state.codec.decode(state.refTextState, ReferenceText.class);
+    }
+
+    @Benchmark
+    public byte[] encodeFactChecker(final Unreviewed state) throws IOException {
+        return state.codec.encode(state.factChecker);
+    }
+
+    @Benchmark
+    public FactChecker decodeFactChecker(final Unreviewed state) throws IOException {
+        return state.codec.decode(state.factCheckerState, FactChecker.class);
+    }
+
+    @Benchmark
+    public byte[] encodeReviewStatistics(final Unreviewed state) throws IOException {
+        return state.codec.encode(state.statistics);
+    }
+
+    @Benchmark
+    public ReviewStatistics decodeReviewStatistics(final Unreviewed state) throws IOException {
+        return state.codec.decode(state.statisticsState, ReviewStatistics.class);
+    }
+}
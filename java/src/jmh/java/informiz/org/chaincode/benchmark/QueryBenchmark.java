@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package informiz.org.chaincode.benchmark;
+
+import informiz.org.chaincode.HypothesisContract;
+import informiz.org.chaincode.InMemoryLedger;
+import informiz.org.chaincode.InMemoryStub;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.state.PageWriter;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paging through the hypothesis on an in-memory ledger: the queryAllHypothesis transaction, and the construction of
+ * a page of results on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int HYPOTHESIS_COUNT = 1000;
+
+    private static final int BATCH_SIZE = 500;
+
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private final HypothesisContract hypotheses = new HypothesisContract();
+
+    private InMemoryLedger ledger;
+
+    @Setup
+    public void setUp() {
+        ledger = new InMemoryLedger();
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.append(i == 0 ? "" : ",").append("{\"claim\":\"Claim ").append(i).append("\",\"locale\":\"en_US\"}");
+        }
+        String claims = batch.append("]").toString();
+        for (int i = 0; i < HYPOTHESIS_COUNT / BATCH_SIZE; i++) {
+            ledger.submit(hypotheses, "createHypothesisBatch", (ctx) -> hypotheses.createHypothesisBatch(ctx, claims));
+        }
+    }
+
+    @Benchmark
+    public String queryAllHypothesis() {
+        return ledger.evaluate(hypotheses, "queryAllHypothesis",
+                (ctx) -> hypotheses.queryAllHypothesis(ctx, String.valueOf(pageSize), "", ""));
+    }
+
+    @Benchmark
+    public String queryAllHypothesisFields() {
+        return ledger.evaluate(hypotheses, "queryAllHypothesis",
+                (ctx) -> hypotheses.queryAllHypothesis(ctx, String.valueOf(pageSize), "", "[\"hid\",\"score\"]"));
+    }
+
+    @Benchmark
+    public String writePage() {
+        InMemoryStub stub = ledger.newTransaction("queryAllHypothesis");
+        return PageWriter.write(stub.getStateByPartialCompositeKeyWithPagination(
+                StateKeys.entityPrefix(ContractType.HYPOTHESIS), pageSize, ""), StateCodec.getDefault());
+    }
+}
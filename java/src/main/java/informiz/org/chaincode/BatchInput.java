@@ -0,0 +1,131 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The input of a batch transaction: a JSON array of up to {@link #MAX_SIZE} objects, one per entity, with the same
+ * fields as the arguments of the matching single-entity transaction,
+ * e.g <code>[{"claim": "...", "locale": "en_US"}]</code>.
+ * All the items are validated before anything is written, so a batch is either written as a whole or not at all.
+ */
+final class BatchInput {
+
+    /** The maximal number of entities in a batch, keeping a batch well within a block */
+    static final int MAX_SIZE = 500;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<JsonNode> items;
+
+    private BatchInput(final List<JsonNode> items) {
+        this.items = items;
+    }
+
+    /**
+     * @param json a JSON array of objects
+     * @return the batch
+     * @throws IllegalArgumentException if the input is not a non-empty array of objects, or exceeds the maximal size
+     */
+    static BatchInput parse(final String json) {
+        JsonNode array;
+        try {
+            array = mapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Batch must be a JSON array", e);
+        }
+        if (array == null || !array.isArray() || array.size() == 0) {
+            throw new IllegalArgumentException("Batch must be a non-empty JSON array");
+        }
+        if (array.size() > MAX_SIZE) {
+            throw new IllegalArgumentException(String.format("Batch is limited to %d items", MAX_SIZE));
+        }
+        List<JsonNode> items = new ArrayList<>(array.size());
+        for (JsonNode item : array) {
+            if (!item.isObject()) {
+                throw new IllegalArgumentException(String.format("Batch item %d is not an object", items.size()));
+            }
+            items.add(item);
+        }
+        return new BatchInput(items);
+    }
+
+    /**
+     * Convert every item of the batch, in order
+     * @param converter creates an entity from an item, throwing an {@link IllegalArgumentException} if it is invalid
+     * @return the entities
+     * @throws IllegalArgumentException naming the first invalid item
+     */
+    <T> List<T> map(final Function<JsonNode, T> converter) {
+        List<T> result = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            try {
+                result.add(converter.apply(item));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                        String.format("Batch item %d is invalid: %s", result.size(), e.getMessage()), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param item an item of the batch
+     * @param field the name of a field
+     * @return the field's value
+     * @throws IllegalArgumentException if the field is missing, is not a string, or is blank
+     */
+    static String required(final JsonNode item, final String field) {
+        String value = optional(item, field);
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("Missing field '%s'", field));
+        }
+        if (value.trim().isEmpty()) {
+            throw new IllegalArgumentException(String.format("Field '%s' is blank", field));
+        }
+        return value;
+    }
+
+    /**
+     * @param item an item of the batch
+     * @param field the name of a field
+     * @return the field's value, or null if the field is missing
+     * @throws IllegalArgumentException if the field is not a string
+     */
+    static String optional(final JsonNode item, final String field) {
+        JsonNode value = item.get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.isTextual()) {
+            throw new IllegalArgumentException(String.format("Field '%s' must be a string", field));
+        }
+        return value.asText();
+    }
+
+    /**
+     * @param ids the ids of the created entities
+     * @return the ids, as a JSON array
+     */
+    static String ids(final List<String> ids) {
+        return results(ids);
+    }
+
+    /**
+     * @param results the results of the batch, one per item
+     * @return the results, as a JSON array
+     */
+    static String results(final List<?> results) {
+        try {
+            return mapper.writeValueAsString(results);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize batch results", e);
+        }
+    }
+}
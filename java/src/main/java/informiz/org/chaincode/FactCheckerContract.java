@@ -1,11 +1,23 @@
 package informiz.org.chaincode;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.ContractType;
 import informiz.org.chaincode.model.FactChecker;
-import informiz.org.chaincode.model.PaginatedResults;
+import informiz.org.chaincode.model.Review;
 import informiz.org.chaincode.model.Utils;
-import org.apache.commons.lang3.StringUtils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.IdGenerator;
+import informiz.org.chaincode.state.IdentityMap;
+import informiz.org.chaincode.state.IzContext;
+import informiz.org.chaincode.state.LegacyRecords;
+import informiz.org.chaincode.state.PageWriter;
+import informiz.org.chaincode.state.Projection;
+import informiz.org.chaincode.state.ReadOnlyGuard;
+import informiz.org.chaincode.state.ReviewStore;
+import informiz.org.chaincode.state.RichQuery;
+import informiz.org.chaincode.state.ScoreIndex;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateKeys;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
@@ -15,7 +27,12 @@ import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Java implementation of the Fact-Checker Contract. The record contains:
@@ -41,9 +58,14 @@ public final class FactCheckerContract implements ContractInterface {
 
     private static ObjectMapper mapper = new ObjectMapper();
 
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private static ReadOnlyGuard readOnlyGuard = new ReadOnlyGuard(FactCheckerContract.class);
+
     public enum FactCheckerErrors {
         FACT_CHECKER_NOT_FOUND,
-        FACT_CHECKER_ALREADY_EXISTS
+        FACT_CHECKER_ALREADY_EXISTS,
+        REVIEWED_ENTITY_NOT_FOUND
     }
 
     /**
@@ -57,6 +79,31 @@ public final class FactCheckerContract implements ContractInterface {
     @Transaction
     public void init(final Context ctx) {}
 
+    /**
+     * Creates the transaction context, which reads and writes every record at most once per transaction.
+     * Read-only (evaluate) transactions get a stub that rejects any write.
+     *
+     * @param stub the transaction's stub
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new IzContext(readOnlyGuard.guard(stub));
+    }
+
+    /**
+     * Writes the records changed by the transaction to the ledger, each exactly once, and publishes the changed
+     * entities in a single event.
+     *
+     * @param ctx the transaction context
+     * @param result the result of the transaction
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        IzContext.records(ctx).flush();
+        IzContext.events(ctx).flush();
+    }
+
     /**
      * Retrieves a fact-checker with the specified key (fcid) from the ledger.
      *
@@ -64,10 +111,24 @@ public final class FactCheckerContract implements ContractInterface {
      * @param key the fact-checker ID
      * @return the fact-checker found on the ledger if there was one
      */
-    @Transaction()
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
     public FactChecker queryFactChecker(final Context ctx, final String key) {
-        ChaincodeStub stub = ctx.getStub();
-        return updateFactChecker(key, stub, fc -> {});
+        return readFactChecker(key, IzContext.records(ctx));
+    }
+
+    /**
+     * Retrieves many fact-checkers by their keys (fcid) from the ledger, in a single call.
+     *
+     * @param ctx the transaction context
+     * @param fcids the fact-checker IDs, as a JSON array, e.g <code>["fcid-1","fcid-2"]</code>
+     * @return the fact-checkers found on the ledger and the IDs that were not found, in json format:
+     * <code>{"results":[...],"missing":[...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getFactCheckers(final Context ctx, final String fcids) {
+        IdentityMap records = IzContext.records(ctx);
+        return MultiGet.fetch(fcids,
+                (fcid) -> records.get(StateKeys.entityKey(ContractType.FACT_CHECKER, fcid), FactChecker.class));
     }
 
     /**
@@ -85,23 +146,73 @@ public final class FactCheckerContract implements ContractInterface {
     public FactChecker createFactChecker(final Context ctx, final String name,
                                          final String reliability, final String confidence,
                                          final String email, final String link) {
-        ChaincodeStub stub = ctx.getStub();
-
         // TODO: authentication and authorization?
         // ClientIdentity id = ctx.getClientIdentity(); ...
 
-        FactChecker factChecker = FactChecker.createFactChecker(name, Utils.createScore(reliability, confidence));
+        FactChecker factChecker = FactChecker.createFactChecker(IzContext.ids(ctx).nextId(ContractType.FACT_CHECKER),
+                name, Utils.createScore(reliability, confidence));
         factChecker.setEmail(email);
         factChecker.setLink(link);
-        try {
-            String fcState = mapper.writeValueAsString(factChecker);
-            stub.putStringState(factChecker.getFcid(), fcState);
-        } catch (JsonProcessingException e) {
-            throw new ChaincodeException("Failed to serialize fact-checker info", e);
-        }
+        IdentityMap records = IzContext.records(ctx);
+        putFactChecker(records, factChecker);
+        IzContext.events(ctx).record(ContractType.FACT_CHECKER, factChecker.getFcid(), ChangeEvents.Kind.CREATED,
+                factChecker.getScore());
         return factChecker;
     }
 
+    /**
+     * Creates a batch of new fact-checkers on the ledger, in a single transaction.
+     * All the fact-checkers are validated before any of them is written.
+     *
+     * @param ctx the transaction context
+     * @param batch a JSON array of up to 500 objects with the fields <code>name</code>, <code>reliability</code>,
+     * <code>confidence</code>, <code>email</code> and <code>link</code>
+     * @return the ids of the created fact-checkers, as a JSON array, in the order of the batch
+     */
+    @Transaction()
+    public String createFactCheckerBatch(final Context ctx, final String batch) {
+        IdGenerator ids = IzContext.ids(ctx);
+
+        List<FactChecker> created = BatchInput.parse(batch).map((item) -> {
+            FactChecker factChecker = FactChecker.createFactChecker(ids.nextId(ContractType.FACT_CHECKER),
+                    BatchInput.required(item, "name"),
+                    Utils.createScore(BatchInput.required(item, "reliability"),
+                            BatchInput.required(item, "confidence")));
+            factChecker.setEmail(BatchInput.optional(item, "email"));
+            factChecker.setLink(BatchInput.optional(item, "link"));
+            return factChecker;
+        });
+        IdentityMap records = IzContext.records(ctx);
+        ChangeEvents events = IzContext.events(ctx);
+        created.forEach((factChecker) -> {
+            putFactChecker(records, factChecker);
+            events.record(ContractType.FACT_CHECKER, factChecker.getFcid(), ChangeEvents.Kind.CREATED,
+                    factChecker.getScore());
+        });
+        return BatchInput.ids(created.stream().map(FactChecker::getFcid).collect(Collectors.toList()));
+    }
+
+    /**
+     * Moves a page of fact-checkers written under their plain ids, before entities were stored under namespaced keys,
+     * to their namespaced keys. Call until it migrates no more fact-checkers.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @return the ids of the migrated fact-checkers, as a JSON array
+     */
+    @Transaction()
+    public String migrateLegacyFactCheckers(final Context ctx, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
+        int size = Utils.pageSizeFromString(pageSize);
+        List<String> migrated = new ArrayList<>();
+        for (FactChecker factChecker : LegacyRecords.take(stub, ContractType.FACT_CHECKER, FactChecker.class, size)) {
+            putFactChecker(records, factChecker);
+            migrated.add(factChecker.getFcid());
+        }
+        return BatchInput.ids(migrated);
+    }
+
     /**
      * Returns all the fact-checkers currently on the ledger, in pages.
      * When an empty string is passed as a value to the <code>bookmark</code> argument,
@@ -113,16 +224,129 @@ public final class FactCheckerContract implements ContractInterface {
      * @param ctx the transaction context
      * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
      * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
      * @return a page of fact-checkers found on the ledger, in json format, starting from the given bookmark
      */
-    @Transaction()
-    public PaginatedResults queryAllFactCheckers(final Context ctx, final String pageSize, final String bookmark) {
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllFactCheckers(final Context ctx, final String pageSize, final String bookmark,
+                                       final String fields) {
         ChaincodeStub stub = ctx.getStub();
         int size = Utils.pageSizeFromString(pageSize);
-        QueryResultsIteratorWithMetadata<KeyValue> states =
-                stub.getStateByRangeWithPagination("", "", size, bookmark);
+        QueryResultsIteratorWithMetadata<KeyValue> states = stub.getStateByPartialCompositeKeyWithPagination(
+                StateKeys.entityPrefix(ContractType.FACT_CHECKER), size, bookmark);
+
+        return PageWriter.write(states, codec, Projection.parse(fields));
+    }
+
+    /**
+     * Returns the active (or inactive) fact-checkers, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param active true for active fact-checkers, false for deactivated ones
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of fact-checkers found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryFactCheckersByStatus(final Context ctx, final boolean active,
+                                            final String pageSize, final String bookmark,
+                                            final String fields) {
+        return RichQuery.select(ContractType.FACT_CHECKER)
+                .equalTo("active", active)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the fact-checkers with a reliability above a given value, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param minReliability the minimal reliability (exclusive)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of fact-checkers found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryFactCheckersByReliability(final Context ctx, final float minReliability,
+                                                 final String pageSize, final String bookmark,
+                                                 final String fields) {
+        return RichQuery.select(ContractType.FACT_CHECKER)
+                .greaterThan("score.reliability", minReliability)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the fact-checkers within a score range, highest score first, in pages.
+     * The first page of the whole range is the top fact-checkers, e.g the 20 most reliable ones for a page size of 20.
+     * The fact-checkers are looked up in an index ordered by score, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param order the score component to order by, either 'reliability' or 'confidence'
+     * @param min the minimal score (inclusive), or an empty string for no lower bound
+     * @param max the maximal score (exclusive), or an empty string for no upper bound
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of fact-checkers found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryFactCheckersByScoreRange(final Context ctx, final String order,
+                                                final String min, final String max,
+                                                final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = ScoreIndex.forName(order).range(stub,
+                ContractType.FACT_CHECKER, Utils.scoreBoundFromString(min), Utils.scoreBoundFromString(max),
+                Utils.pageSizeFromString(pageSize), bookmark);
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.FACT_CHECKER, ScoreIndex.id(entry))));
+    }
+
+    /**
+     * Returns the reviews made by a fact-checker, of hypothesis, reference-texts and sources, in pages.
+     * The reviews are looked up in the <code>fcid~entityType~entityId</code> index, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param fcid the key associated with the fact-checker on the ledger
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of reviews found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryReviewsByFactChecker(final Context ctx, final String fcid,
+                                            final String pageSize, final String bookmark) {
+        return ReviewStore.getReviewsByFactChecker(ctx.getStub(), fcid, Utils.pageSizeFromString(pageSize), bookmark);
+    }
 
-        return new PaginatedResults(states);
+    /**
+     * Add or update a batch of a fact-checker's reviews, of hypothesis, reference-texts and sources, in a single
+     * transaction. All the reviews are validated, and the existence of every reviewed entity checked, before any of
+     * them is written.
+     *
+     * @param ctx the transaction context
+     * @param fcid the key associated with the fact-checker on the ledger
+     * @param reviews a JSON array of up to 500 objects with the fields <code>entityType</code> (HYPOTHESIS, REF_TEXT
+     *                or SOURCE), <code>entityId</code> and <code>reliability</code>
+     * @return the stored reviews, as a JSON array, in the order of the batch
+     */
+    @Transaction()
+    public String submitReviews(final Context ctx, final String fcid, final String reviews) {
+        List<Review> batch = BatchInput.parse(reviews).map((item) -> Review.createReview(
+                reviewedType(BatchInput.required(item, "entityType")),
+                BatchInput.required(item, "entityId"),
+                fcid,
+                Utils.reliabilityFromString(BatchInput.required(item, "reliability"))));
+        ChaincodeStub stub = ctx.getStub();
+        requireReviewedEntities(stub, batch);
+        List<Review> stored = ReviewStore.putReviews(stub, fcid, batch);
+        ChangeEvents events = IzContext.events(ctx);
+        batch.forEach((review) -> events.record(ContractType.valueOf(review.getEntityType()), review.getEntityId(),
+                ChangeEvents.Kind.REVIEWED, null));
+        return BatchInput.results(stored);
     }
 
     /**
@@ -135,9 +359,7 @@ public final class FactCheckerContract implements ContractInterface {
      */
     @Transaction()
     public FactChecker updateFactCheckerName(final Context ctx, final String fcid, final String name) {
-        ChaincodeStub stub = ctx.getStub();
-
-        return updateFactChecker(fcid, stub, fc -> fc.setName(name));
+        return updateFactChecker(ctx, fcid, fc -> fc.setName(name));
     }
 
     /**
@@ -152,8 +374,8 @@ public final class FactCheckerContract implements ContractInterface {
     @Transaction()
     public FactChecker updateFactCheckerScore(final Context ctx, final String fcid,
                                               final String reliability, final String confidence) {
-        ChaincodeStub stub = ctx.getStub();
-        return updateFactChecker(fcid, stub, fc -> fc.setScore(Utils.createScore(reliability, confidence)));
+        return updateFactChecker(ctx, fcid,
+                fc -> fc.setScore(Utils.createScore(reliability, confidence)));
     }
 
     /**
@@ -166,9 +388,7 @@ public final class FactCheckerContract implements ContractInterface {
      */
     @Transaction()
     public FactChecker updateFactCheckerEmail(final Context ctx, final String fcid, final String email) {
-        ChaincodeStub stub = ctx.getStub();
-
-        return updateFactChecker(fcid, stub, fc -> fc.setEmail(email));
+        return updateFactChecker(ctx, fcid, fc -> fc.setEmail(email));
     }
 
 
@@ -182,9 +402,7 @@ public final class FactCheckerContract implements ContractInterface {
      */
     @Transaction()
     public FactChecker updateFactCheckerLink(final Context ctx, final String fcid, final String link) {
-        ChaincodeStub stub = ctx.getStub();
-
-        return updateFactChecker(fcid, stub, fc -> fc.setLink(link));
+        return updateFactChecker(ctx, fcid, fc -> fc.setLink(link));
     }
 
     /**
@@ -197,7 +415,6 @@ public final class FactCheckerContract implements ContractInterface {
      */
     @Transaction()
     public FactChecker updateFactCheckerInfo(final Context ctx, final String fcid, final String jsonStr) {
-        ChaincodeStub stub = ctx.getStub();
         FactChecker updated;
         try {
             updated = mapper.readValue(jsonStr, FactChecker.class);
@@ -205,7 +422,7 @@ public final class FactCheckerContract implements ContractInterface {
             throw new IllegalArgumentException("Failed to deserialize facte-checker info", e);
         }
 
-        return updateFactChecker(fcid, stub, factChecker -> factChecker.updateInfo(updated));
+        return updateFactChecker(ctx, fcid, factChecker -> factChecker.updateInfo(updated));
     }
 
     /**
@@ -217,36 +434,86 @@ public final class FactCheckerContract implements ContractInterface {
      */
     @Transaction()
     public FactChecker deleteFactChecker(final Context ctx, final String fcid) {
-        ChaincodeStub stub = ctx.getStub();
+        FactChecker factChecker = updateFactChecker(ctx, fcid, fc -> fc.setActive(false));
+        IzContext.events(ctx).record(ContractType.FACT_CHECKER, fcid, ChangeEvents.Kind.DELETED,
+                factChecker.getScore());
+        return factChecker;
+    }
 
-        return updateFactChecker(fcid, stub, fc -> fc.setActive(false));
+    /**
+     * @param entityType the name of an entity type
+     * @return the entity type, if entities of the type can be reviewed
+     */
+    private static ContractType reviewedType(final String entityType) {
+        ContractType type = ContractType.valueOf(entityType);
+        if (type == ContractType.FACT_CHECKER) {
+            throw new IllegalArgumentException("Fact-checkers cannot be reviewed");
+        }
+        return type;
     }
 
     /**
-     * A utility function for updating a fact-checker on the ledger
-     * @param fcid the fact-checker's id on the ledger
+     * Check that every entity reviewed in a batch exists, reading each entity once however many reviews it has
      * @param stub a chaincode stub
+     * @param batch the reviews
+     */
+    private static void requireReviewedEntities(final ChaincodeStub stub, final List<Review> batch) {
+        Set<String> checked = new HashSet<>();
+        for (Review review : batch) {
+            ContractType type = ContractType.valueOf(review.getEntityType());
+            String entityId = review.getEntityId();
+            if (checked.add(StateKeys.entityKey(type, entityId)) && !ReviewStore.exists(stub, type, entityId)) {
+                String errorMessage = String.format("Reviewed %s %s does not exist", type, entityId);
+                throw new ChaincodeException(errorMessage, FactCheckerErrors.REVIEWED_ENTITY_NOT_FOUND.toString());
+            }
+        }
+    }
+
+    /**
+     * A utility function for updating a fact-checker on the ledger, and moving it in the score indexes if its score
+     * changed
+     * @param ctx the transaction context
+     * @param fcid the fact-checker's id on the ledger
      * @param updateFunc a consumer function for updating the fact-checker
      * @return the updated fact-checker
      */
-    private FactChecker updateFactChecker(final String fcid, final ChaincodeStub stub,
+    private FactChecker updateFactChecker(final Context ctx, final String fcid,
                                           final Consumer<FactChecker> updateFunc) {
-        String factCheckerState = stub.getStringState(fcid);
+        IdentityMap records = IzContext.records(ctx);
+        FactChecker factChecker = readFactChecker(fcid, records);
+        List<String> indexed = ScoreIndex.keys(ContractType.FACT_CHECKER, fcid, factChecker.getScore());
+        updateFunc.accept(factChecker);
+        records.put(StateKeys.entityKey(ContractType.FACT_CHECKER, fcid), factChecker);
+        ScoreIndex.move(records.getStub(), indexed,
+                ScoreIndex.keys(ContractType.FACT_CHECKER, fcid, factChecker.getScore()));
+        IzContext.events(ctx).record(ContractType.FACT_CHECKER, fcid, ChangeEvents.Kind.UPDATED,
+                factChecker.getScore());
+        return factChecker;
+    }
+
+    /**
+     * Write a new FactChecker record to the ledger, and add it to the score indexes
+     * @param records the records of the transaction
+     * @param factChecker the new fact-checker
+     */
+    private void putFactChecker(final IdentityMap records, final FactChecker factChecker) {
+        records.put(StateKeys.entityKey(ContractType.FACT_CHECKER, factChecker.getFcid()), factChecker);
+        ScoreIndex.put(records.getStub(), ContractType.FACT_CHECKER, factChecker.getFcid(), factChecker.getScore());
+    }
 
-        if (StringUtils.isBlank(factCheckerState)) {
+    /**
+     * A utility function for reading a fact-checker from the ledger, without writing it back
+     * @param fcid the fact-checker's id on the ledger
+     * @param records the records of the transaction
+     * @return the fact-checker
+     */
+    private FactChecker readFactChecker(final String fcid, final IdentityMap records) {
+        FactChecker factChecker = records.get(StateKeys.entityKey(ContractType.FACT_CHECKER, fcid), FactChecker.class);
+
+        if (factChecker == null) {
             String errorMessage = String.format("Fact-checker %s does not exist", fcid);
             throw new ChaincodeException(errorMessage, FactCheckerErrors.FACT_CHECKER_NOT_FOUND.toString());
         }
-
-        FactChecker factChecker;
-        try {
-            factChecker = mapper.readValue(factCheckerState, FactChecker.class);
-            updateFunc.accept(factChecker);
-            String newFcState = mapper.writeValueAsString(factChecker);
-            stub.putStringState(fcid, newFcState);
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to de/serialize fact-checker info", e);
-        }
         return factChecker;
     }
 
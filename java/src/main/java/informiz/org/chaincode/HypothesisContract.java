@@ -1,11 +1,26 @@
 package informiz.org.chaincode;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.ContractType;
 import informiz.org.chaincode.model.Hypothesis;
-import informiz.org.chaincode.model.PaginatedResults;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Score;
 import informiz.org.chaincode.model.Utils;
-import org.apache.commons.lang3.StringUtils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.IdGenerator;
+import informiz.org.chaincode.state.IdentityMap;
+import informiz.org.chaincode.state.IzContext;
+import informiz.org.chaincode.state.LegacyRecords;
+import informiz.org.chaincode.state.PageWriter;
+import informiz.org.chaincode.state.Projection;
+import informiz.org.chaincode.state.ReadOnlyGuard;
+import informiz.org.chaincode.state.ReviewStore;
+import informiz.org.chaincode.state.RichQuery;
+import informiz.org.chaincode.state.ScoreHistory;
+import informiz.org.chaincode.state.ScoreIndex;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
@@ -14,9 +29,11 @@ import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Java implementation of the Hypothesis Contract. The record contains:
@@ -24,7 +41,7 @@ import java.util.function.Function;
  * - The factual claim
  * - The locale of the text
  * - References for the factual claim
- * - Reviews by fact-checkers
+ * - Reviews by fact-checkers, each stored as a separate record on the ledger
  * - The current reliability/confidence score of the hypothesis
  */
 @Contract(
@@ -42,11 +59,14 @@ import java.util.function.Function;
                         url = "https://informiz.org")))
 public final class HypothesisContract implements ContractInterface {
 
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private static ReadOnlyGuard readOnlyGuard = new ReadOnlyGuard(HypothesisContract.class);
 
     public enum HypothesisErrors {
         HYPOTHESIS_NOT_FOUND,
-        HYPOTHESIS_ALREADY_EXISTS
+        HYPOTHESIS_ALREADY_EXISTS,
+        REVIEW_NOT_FOUND
     }
 
     /**
@@ -60,6 +80,31 @@ public final class HypothesisContract implements ContractInterface {
     @Transaction
     public void init(final Context ctx) {}
 
+    /**
+     * Creates the transaction context, which reads and writes every record at most once per transaction.
+     * Read-only (evaluate) transactions get a stub that rejects any write.
+     *
+     * @param stub the transaction's stub
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new IzContext(readOnlyGuard.guard(stub));
+    }
+
+    /**
+     * Writes the records changed by the transaction to the ledger, each exactly once, and publishes the changed
+     * entities in a single event.
+     *
+     * @param ctx the transaction context
+     * @param result the result of the transaction
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        IzContext.records(ctx).flush();
+        IzContext.events(ctx).flush();
+    }
+
     /**
      * Retrieves a hypothesis with the specified key (hid) from the ledger.
      *
@@ -67,24 +112,84 @@ public final class HypothesisContract implements ContractInterface {
      * @param hid the hypothesis ID
      * @return the hypothesis found on the ledger if there was one
      */
-    @Transaction()
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Hypothesis queryHypothesis(final Context ctx, final String hid) {
-        ChaincodeStub stub = ctx.getStub();
-        String hypothesisState = stub.getStringState(hid);
+        Hypothesis hypothesis = findHypothesis(IzContext.records(ctx), hid);
 
-        if (StringUtils.isBlank(hypothesisState)) {
+        if (hypothesis == null) {
             throw new ChaincodeException(String.format("Hypothesis %s does not exist", hid),
                     HypothesisErrors.HYPOTHESIS_NOT_FOUND.toString());
         }
+        return hypothesis;
+    }
 
-        Hypothesis hypothesis = null;
-        try {
-            hypothesis = mapper.readValue(hypothesisState, Hypothesis.class);
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to deserialize hypothesis info", e);
+    /**
+     * Retrieves a hypothesis along with the reference-texts it cites and their sources, in a single call.
+     *
+     * @param ctx the transaction context
+     * @param hid the hypothesis ID
+     * @param depth 0 for the hypothesis only, 1 to add its reference-texts, 2 to also add their sources
+     * @return the hypothesis and its de-duplicated subgraph, in json format:
+     * <code>{"hypothesis":{...},"referenceTexts":[...],"sources":[...],"missing":[...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisGraph(final Context ctx, final String hid, final int depth) {
+        IdentityMap records = IzContext.records(ctx);
+        Hypothesis hypothesis = findHypothesis(records, hid);
+
+        if (hypothesis == null) {
+            throw new ChaincodeException(String.format("Hypothesis %s does not exist", hid),
+                    HypothesisErrors.HYPOTHESIS_NOT_FOUND.toString());
         }
+        return HypothesisGraph.expand(records, hypothesis, depth);
+    }
 
-        return hypothesis;
+    /**
+     * Retrieves many hypothesis by their keys (hid) from the ledger, in a single call.
+     *
+     * @param ctx the transaction context
+     * @param hids the hypothesis IDs, as a JSON array, e.g <code>["hid-1","hid-2"]</code>
+     * @return the hypothesis found on the ledger and the IDs that were not found, in json format:
+     * <code>{"results":[...],"missing":[...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getHypotheses(final Context ctx, final String hids) {
+        IdentityMap records = IzContext.records(ctx);
+        return MultiGet.fetch(hids, (hid) -> findHypothesis(records, hid));
+    }
+
+    /**
+     * Retrieves only the score of a hypothesis, without its reviews or the rest of its record.
+     * This is the current score, derived from the reviews if they changed since the hypothesis was last written.
+     *
+     * @param ctx the transaction context
+     * @param hid the hypothesis ID
+     * @return the score of the hypothesis found on the ledger if there was one
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public Score queryHypothesisScore(final Context ctx, final String hid) {
+        Score score = ReviewStore.getScore(ctx.getStub(), ContractType.HYPOTHESIS, hid);
+
+        if (score == null) {
+            throw new ChaincodeException(String.format("Hypothesis %s does not exist", hid),
+                    HypothesisErrors.HYPOTHESIS_NOT_FOUND.toString());
+        }
+        return score;
+    }
+
+    /**
+     * Returns the timeline of a hypothesis's score, downsampled to at most the given number of points.
+     * Only the score of each historic value of the hypothesis is decoded.
+     *
+     * @param ctx the transaction context
+     * @param hid the hypothesis ID
+     * @param maxPoints the maximal number of points, limited to 1-1000
+     * @return the score timeline, oldest first, in json format:
+     * <code>{"points":[{"time":epochMillis,"reliability":0.8,"confidence":0.6},...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisScoreHistory(final Context ctx, final String hid, final int maxPoints) {
+        return ScoreHistory.query(ctx.getStub(), StateKeys.entityKey(ContractType.HYPOTHESIS, hid), codec, maxPoints);
     }
 
     /**
@@ -98,18 +203,63 @@ public final class HypothesisContract implements ContractInterface {
     @Transaction()
     public Hypothesis createHypothesis(final Context ctx, final String claim, final String locale) {
         Locale l =  Utils.localeFromString(locale);
-        ChaincodeStub stub = ctx.getStub();
 
-        Hypothesis hypothesis = Hypothesis.createHypothesis(claim, l);
-        try {
-            String hypothesisState = mapper.writeValueAsString(hypothesis);
-            stub.putStringState(hypothesis.getHid(), hypothesisState);
-        } catch (JsonProcessingException e) {
-            throw new ChaincodeException("Failed to serialize hypothesis info", e);
-        }
+        Hypothesis hypothesis = Hypothesis.createHypothesis(IzContext.ids(ctx).nextId(ContractType.HYPOTHESIS),
+                claim, l);
+        putHypothesis(IzContext.records(ctx), hypothesis);
+        IzContext.events(ctx).record(ContractType.HYPOTHESIS, hypothesis.getHid(), ChangeEvents.Kind.CREATED,
+                hypothesis.getScore());
         return hypothesis;
     }
 
+    /**
+     * Creates a batch of new hypothesis on the ledger, in a single transaction.
+     * All the hypothesis are validated before any of them is written.
+     *
+     * @param ctx the transaction context
+     * @param batch a JSON array of up to 500 objects with the fields <code>claim</code> and <code>locale</code>
+     * @return the ids of the created hypothesis, as a JSON array, in the order of the batch
+     */
+    @Transaction()
+    public String createHypothesisBatch(final Context ctx, final String batch) {
+        IdGenerator ids = IzContext.ids(ctx);
+
+        List<Hypothesis> created = BatchInput.parse(batch).map((item) -> Hypothesis.createHypothesis(
+                ids.nextId(ContractType.HYPOTHESIS),
+                BatchInput.required(item, "claim"),
+                Utils.localeFromString(BatchInput.required(item, "locale"))));
+        IdentityMap records = IzContext.records(ctx);
+        ChangeEvents events = IzContext.events(ctx);
+        created.forEach((hypothesis) -> {
+            putHypothesis(records, hypothesis);
+            events.record(ContractType.HYPOTHESIS, hypothesis.getHid(), ChangeEvents.Kind.CREATED,
+                    hypothesis.getScore());
+        });
+        return BatchInput.ids(created.stream().map(Hypothesis::getHid).collect(Collectors.toList()));
+    }
+
+    /**
+     * Moves a page of hypothesis written under their plain ids, before entities were stored under namespaced keys, to
+     * their namespaced keys, and the reviews they hold to their own keys. Call until it migrates no more hypothesis.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @return the ids of the migrated hypothesis, as a JSON array
+     */
+    @Transaction()
+    public String migrateLegacyHypotheses(final Context ctx, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
+        int size = Utils.pageSizeFromString(pageSize);
+        List<String> migrated = new ArrayList<>();
+        for (Hypothesis hypothesis : LegacyRecords.take(stub, ContractType.HYPOTHESIS, Hypothesis.class, size)) {
+            LegacyRecords.moveReviews(stub, ContractType.HYPOTHESIS, hypothesis.getHid(), hypothesis.getReviews());
+            putHypothesis(records, hypothesis);
+            migrated.add(hypothesis.getHid());
+        }
+        return BatchInput.ids(migrated);
+    }
+
     /**
      * Returns all the hypothesis currently on the ledger, in pages.
      * When an empty string is passed as a value to the <code>bookmark</code> argument,
@@ -121,20 +271,91 @@ public final class HypothesisContract implements ContractInterface {
      * @param ctx the transaction context
      * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
      * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
      * @return a page of hypothesiss found on the ledger, in json format, starting from the given bookmark
      */
-    @Transaction()
-    public PaginatedResults queryAllHypothesis(final Context ctx, final String pageSize, final String bookmark) {
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllHypothesis(final Context ctx, final String pageSize, final String bookmark,
+                                     final String fields) {
         int size = Utils.pageSizeFromString(pageSize);
         ChaincodeStub stub = ctx.getStub();
-        QueryResultsIteratorWithMetadata<KeyValue> states =
-                stub.getStateByRangeWithPagination("", "", size, bookmark);
+        QueryResultsIteratorWithMetadata<KeyValue> states = stub.getStateByPartialCompositeKeyWithPagination(
+                StateKeys.entityPrefix(ContractType.HYPOTHESIS), size, bookmark);
+
+        return PageWriter.write(states, codec, Projection.parse(fields));
+    }
+
+    /**
+     * Returns the hypothesis in a given locale, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param locale the locale of the hypothesis, in standard string form, e.g 'en_US'
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of hypothesis found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisByLocale(final Context ctx, final String locale,
+                                          final String pageSize, final String bookmark,
+                                          final String fields) {
+        return RichQuery.select(ContractType.HYPOTHESIS)
+                .equalTo("locale", Utils.localeFromString(locale).toString())
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the hypothesis with a reliability above a given value, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param minReliability the minimal reliability (exclusive)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of hypothesis found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisByReliability(final Context ctx, final float minReliability,
+                                               final String pageSize, final String bookmark,
+                                               final String fields) {
+        return RichQuery.select(ContractType.HYPOTHESIS)
+                .greaterThan("score.reliability", minReliability)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the hypothesis within a score range, highest score first, in pages.
+     * The first page of the whole range is the top hypothesis, e.g the 20 most reliable ones for a page size of 20.
+     * The hypothesis are looked up in an index ordered by score, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param order the score component to order by, either 'reliability' or 'confidence'
+     * @param min the minimal score (inclusive), or an empty string for no lower bound
+     * @param max the maximal score (exclusive), or an empty string for no upper bound
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of hypothesis found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisByScoreRange(final Context ctx, final String order,
+                                              final String min, final String max,
+                                              final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = ScoreIndex.forName(order).range(stub,
+                ContractType.HYPOTHESIS, Utils.scoreBoundFromString(min), Utils.scoreBoundFromString(max),
+                Utils.pageSizeFromString(pageSize), bookmark);
 
-        return new PaginatedResults(states);
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, ScoreIndex.id(entry))));
     }
 
     /**
      * Changes the score of a hypothesis on the ledger.
+     * The score stands until the reviews of the hypothesis change, or its score is refreshed from them.
      *
      * @param ctx the transaction context
      * @param hid the hypothesis id (its key on the ledger)
@@ -151,6 +372,24 @@ public final class HypothesisContract implements ContractInterface {
         return updateHypothesis(ctx, hid, updateScore);
     }
 
+    /**
+     * Fold the pending changes to a hypothesis' review statistics into the hypothesis on the ledger, and re-derive
+     * its score from the statistics.
+     * Any write of the hypothesis folds the pending changes, so this only re-derives a score that was changed with
+     * <code>updateHypothesisScore</code>, and brings the score indexes up to date with the reviews.
+     *
+     * @param ctx the transaction context
+     * @param hid the hypothesis id (its key on the ledger)
+     * @return the updated Hypothesis
+     */
+    @Transaction()
+    public Hypothesis refreshHypothesisScore(final Context ctx, final String hid) {
+        Function<Hypothesis, Hypothesis> refreshScore = (hypothesis) -> {
+            hypothesis.applyStatistics(new ReviewStatistics()); return hypothesis;
+        };
+        return updateHypothesis(ctx, hid, refreshScore);
+    }
+
     /**
      * Update the locale of a hypothesis on the ledger.
      *
@@ -169,20 +408,27 @@ public final class HypothesisContract implements ContractInterface {
 
     /**
      * Add or update a fact-checker's review of a hypothesis on the ledger.
+     * The review is stored as a separate record. The hypothesis record itself is only read, to check that
+     * the hypothesis exists, and is never written.
      *
      * @param ctx the transaction context
      * @param hid the hypothesis id (its key on the ledger)
-     * @param fcid the hypothesis's id
+     * @param fcid the fact-checker's id
      * @param reliability the reliability assigned to the hypothesis by the fact-checker
-     * @return the updated Hypothesis
+     * @return the stored Review
      */
     @Transaction()
-    public Hypothesis addOrUpdateReview(final Context ctx, final String hid, String fcid,
-                                        final String reliability) {
-        Function<Hypothesis, Hypothesis> addRefTextReview = (hypothesis) -> {
-            hypothesis.addReview(fcid, Utils.reliabilityFromString(reliability)); return hypothesis;
-        };
-        return updateHypothesis(ctx, hid, addRefTextReview);
+    public Review addOrUpdateReview(final Context ctx, final String hid, String fcid,
+                                    final String reliability) {
+        ChaincodeStub stub = ctx.getStub();
+        if (!ReviewStore.exists(stub, ContractType.HYPOTHESIS, hid)) {
+            throw new ChaincodeException(String.format("Hypothesis %s does not exist", hid),
+                    HypothesisErrors.HYPOTHESIS_NOT_FOUND.toString());
+        }
+        Review review = ReviewStore.putReview(stub, ContractType.HYPOTHESIS, hid, fcid,
+                Utils.reliabilityFromString(reliability));
+        IzContext.events(ctx).record(ContractType.HYPOTHESIS, hid, ChangeEvents.Kind.REVIEWED, null);
+        return review;
     }
 
     /**
@@ -191,18 +437,23 @@ public final class HypothesisContract implements ContractInterface {
      * @param ctx the transaction context
      * @param hid the hypothesis (its key on the ledger)
      * @param fcid the fact-checker's id
-     * @return the updated Hypothesis
+     * @return the removed Review
      */
     @Transaction()
-    public Hypothesis removeReview(final Context ctx, final String hid, String fcid) {
-        Function<Hypothesis, Hypothesis> removeRefTextReview = (hypothesis) -> {
-            hypothesis.removeReview(fcid); return hypothesis;
-        };
-        return updateHypothesis(ctx, hid, removeRefTextReview);
+    public Review removeReview(final Context ctx, final String hid, String fcid) {
+        ChaincodeStub stub = ctx.getStub();
+        Review removed = ReviewStore.removeReview(stub, ContractType.HYPOTHESIS, hid, fcid);
+
+        if (removed == null) {
+            String errorMessage = String.format("Fact-checker %s did not review hypothesis %s", fcid, hid);
+            throw new ChaincodeException(errorMessage, HypothesisErrors.REVIEW_NOT_FOUND.toString());
+        }
+        IzContext.events(ctx).record(ContractType.HYPOTHESIS, hid, ChangeEvents.Kind.REVIEWED, null);
+        return removed;
     }
 
     /**
-     * Add a reference to a hypothesis on the ledger.
+     * Add a reference to a hypothesis on the ledger, and index the hypothesis under the reference-text.
      *
      * @param ctx the transaction context
      * @param hid the hypothesis id (its key on the ledger)
@@ -212,13 +463,16 @@ public final class HypothesisContract implements ContractInterface {
     @Transaction()
     public Hypothesis addReference(final Context ctx, final String hid, final String tid) {
         Function<Hypothesis, Hypothesis> addRefTextReview = (hypothesis) -> {
-            hypothesis.addReference(tid); return hypothesis;
+            if (hypothesis.addReference(tid) == null) {
+                StateIndex.TEXT_HYPOTHESES.put(ctx.getStub(), tid, hid);
+            }
+            return hypothesis;
         };
         return updateHypothesis(ctx, hid, addRefTextReview);
     }
 
     /**
-     * Remove a reference from a hypothesis on the ledger.
+     * Remove a reference from a hypothesis on the ledger, and remove the hypothesis from the reference-text's index.
      *
      * @param ctx the transaction context
      * @param hid the hypothesis (its key on the ledger)
@@ -228,13 +482,72 @@ public final class HypothesisContract implements ContractInterface {
     @Transaction()
     public Hypothesis removeReference(final Context ctx, final String hid, final String tid) {
         Function<Hypothesis, Hypothesis> removeRefTextReview = (hypothesis) -> {
-            hypothesis.removeReference(tid); return hypothesis;
+            if (hypothesis.removeReference(tid) != null) {
+                StateIndex.TEXT_HYPOTHESES.delete(ctx.getStub(), tid, hid);
+            }
+            return hypothesis;
         };
         return updateHypothesis(ctx, hid, removeRefTextReview);
     }
 
     /**
-     * Update a Hypothesis record on the ledger
+     * Returns the hypothesis citing a reference-text, in pages.
+     * The hypothesis are looked up in the <code>tid~hid</code> index, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param tid the reference-text id (its key on the ledger)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of hypothesis found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryHypothesisByReference(final Context ctx, final String tid,
+                                             final String pageSize, final String bookmark) {
+        int size = Utils.pageSizeFromString(pageSize);
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = StateIndex.TEXT_HYPOTHESES.page(stub, size, bookmark, tid);
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, StateIndex.lastAttribute(entry))));
+    }
+
+    /**
+     * Returns the most recently created hypothesis, newest first, in pages.
+     * The hypothesis are looked up in an index ordered by creation time, so a page costs the same however many
+     * hypothesis there are.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of hypothesis found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryRecentHypotheses(final Context ctx, final String pageSize, final String bookmark) {
+        int size = Utils.pageSizeFromString(pageSize);
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries =
+                StateIndex.RECENT.page(stub, size, bookmark, ContractType.HYPOTHESIS.name());
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, StateIndex.lastAttribute(entry))));
+    }
+
+    /**
+     * Write a new Hypothesis record to the ledger, and add it to the score and creation-time indexes
+     * @param records the records of the transaction
+     * @param hypothesis the new hypothesis
+     */
+    private void putHypothesis(final IdentityMap records, final Hypothesis hypothesis) {
+        ChaincodeStub stub = records.getStub();
+        records.put(StateKeys.entityKey(ContractType.HYPOTHESIS, hypothesis.getHid()), hypothesis);
+        ScoreIndex.put(stub, ContractType.HYPOTHESIS, hypothesis.getHid(), hypothesis.getScore());
+        StateIndex.RECENT.put(stub, ContractType.HYPOTHESIS.name(), StateKeys.newestFirst(stub.getTxTimestamp()),
+                hypothesis.getHid());
+    }
+
+    /**
+     * Update a Hypothesis record on the ledger, and move it in the score indexes if its score changed.
+     * The pending changes to the hypothesis's review statistics are folded into it before it is updated.
      * @param ctx thr transaction context
      * @param hid the hypothesis id (its key on the ledger)
      * @param updateFunc an update function to execute on the hypothesis
@@ -242,23 +555,47 @@ public final class HypothesisContract implements ContractInterface {
      */
     private Hypothesis updateHypothesis(final Context ctx, final String hid,
                                         final Function<Hypothesis, Hypothesis> updateFunc) {
-        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
 
-        String hypothesisState = stub.getStringState(hid);
+        String key = StateKeys.entityKey(ContractType.HYPOTHESIS, hid);
 
-        if (StringUtils.isBlank(hypothesisState)) {
-            String errorMessage = String.format("Reference-text %s does not exist", hid);
+        Hypothesis hypothesis = records.get(key, Hypothesis.class);
+
+        if (hypothesis == null) {
+            String errorMessage = String.format("Hypothesis %s does not exist", hid);
             throw new ChaincodeException(errorMessage, HypothesisErrors.HYPOTHESIS_NOT_FOUND.toString());
         }
 
-        try {
-            Hypothesis hypothesis = mapper.readValue(hypothesisState, Hypothesis.class);
-            updateFunc.apply(hypothesis);
-            String newFcState = mapper.writeValueAsString(hypothesis);
-            stub.putStringState(hid, newFcState);
-            return hypothesis;
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to de/serialize hypothesis info", e);
+        List<String> indexed = ScoreIndex.keys(ContractType.HYPOTHESIS, hid, hypothesis.getScore());
+        ReviewStatistics pending = ReviewStore.foldPendingStatistics(records.getStub(), hid);
+        if (pending != null) {
+            hypothesis.applyStatistics(pending);
+        }
+        updateFunc.apply(hypothesis);
+        records.put(key, hypothesis);
+        ScoreIndex.move(records.getStub(), indexed,
+                ScoreIndex.keys(ContractType.HYPOTHESIS, hid, hypothesis.getScore()));
+        IzContext.events(ctx).record(ContractType.HYPOTHESIS, hid, ChangeEvents.Kind.UPDATED, hypothesis.getScore());
+        return hypothesis;
+    }
+
+    /**
+     * A utility function for reading a copy of a hypothesis from the ledger, along with its reviews and current score
+     * @param records the records of the transaction
+     * @param hid the hypothesis id
+     * @return the copy of the hypothesis, or null if there is no such hypothesis
+     */
+    private Hypothesis findHypothesis(final IdentityMap records, final String hid) {
+        Hypothesis hypothesis = records.copy(StateKeys.entityKey(ContractType.HYPOTHESIS, hid), Hypothesis.class);
+        if (hypothesis != null) {
+            ChaincodeStub stub = records.getStub();
+            hypothesis.getReviews().putAll(ReviewStore.getReviews(stub, hid));
+            ReviewStatistics pending = ReviewStore.getPendingStatistics(stub, hid);
+            if (pending != null) {
+                hypothesis.applyStatistics(pending);
+            }
         }
+        return hypothesis;
     }
+
 }
@@ -0,0 +1,95 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.ReferenceText;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Source;
+import informiz.org.chaincode.state.IdentityMap;
+import informiz.org.chaincode.state.ReviewStore;
+import informiz.org.chaincode.state.StateKeys;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The subgraph of a hypothesis: the hypothesis, the reference-texts it cites (depth 1) and their sources (depth 2),
+ * written as <code>{"hypothesis":{...},"referenceTexts":[...],"sources":[...],"missing":[...]}</code>.
+ * Every entity appears once, with its current score. Reference-texts and sources are copies of the records, returned
+ * without their reviews, and ids that are referenced but not found on the ledger are listed as missing.
+ */
+final class HypothesisGraph {
+
+    /** The maximal depth of the graph, reaching the sources */
+    static final int MAX_DEPTH = 2;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HypothesisGraph() {}
+
+    /**
+     * Expand a hypothesis to its subgraph
+     * @param records the records of the transaction
+     * @param hypothesis the hypothesis
+     * @param depth the depth of the graph, clamped to the range [0 - {@link #MAX_DEPTH}]
+     * @return the subgraph, as JSON
+     */
+    static String expand(final IdentityMap records, final Hypothesis hypothesis, final int depth) {
+        int levels = Math.max(0, Math.min(MAX_DEPTH, depth));
+        List<ReferenceText> texts = new ArrayList<>();
+        List<Source> sources = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+
+        Set<String> sids = new LinkedHashSet<>();
+        if (levels >= 1) {
+            for (String tid : hypothesis.getReferences().keySet()) {
+                ReferenceText text = records.copy(StateKeys.entityKey(ContractType.REF_TEXT, tid), ReferenceText.class);
+                if (text == null) {
+                    missing.add(tid);
+                    continue;
+                }
+                text.getReviews().clear();
+                ReviewStatistics pending = ReviewStore.getPendingStatistics(records.getStub(), tid);
+                if (pending != null) {
+                    text.applyStatistics(pending);
+                }
+                texts.add(text);
+                if (text.getSid() != null) {
+                    sids.add(text.getSid());
+                }
+            }
+        }
+        if (levels >= 2) {
+            for (String sid : sids) {
+                Source source = records.copy(StateKeys.entityKey(ContractType.SOURCE, sid), Source.class);
+                if (source == null) {
+                    missing.add(sid);
+                    continue;
+                }
+                source.getReviews().clear();
+                ReviewStatistics pending = ReviewStore.getPendingStatistics(records.getStub(), sid);
+                if (pending != null) {
+                    source.applyStatistics(pending);
+                }
+                sources.add(source);
+            }
+        }
+
+        Map<String, Object> graph = new LinkedHashMap<>();
+        graph.put("hypothesis", hypothesis);
+        graph.put("referenceTexts", texts);
+        graph.put("sources", sources);
+        graph.put("missing", missing);
+        try {
+            return mapper.writeValueAsString(graph);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize hypothesis graph", e);
+        }
+    }
+}
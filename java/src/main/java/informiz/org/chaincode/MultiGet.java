@@ -0,0 +1,88 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Fetching many entities by id in one transaction. The ids are given as a JSON array of up to {@link #MAX_SIZE}
+ * strings, e.g <code>["id-1","id-2"]</code>, and the result is
+ * <code>{"results":[record,...],"missing":[id,...]}</code>: the records found, in the order of their ids, and the ids
+ * that were not found. Repeated ids are fetched once.
+ */
+final class MultiGet {
+
+    /** The maximal number of ids in a single request */
+    static final int MAX_SIZE = BatchInput.MAX_SIZE;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private MultiGet() {}
+
+    /**
+     * @param json a JSON array of ids
+     * @return the distinct ids, in order
+     * @throws IllegalArgumentException if the input is not a non-empty array of non-blank strings, or exceeds the
+     * maximal size
+     */
+    static Set<String> parseIds(final String json) {
+        JsonNode array;
+        try {
+            array = mapper.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Ids must be a JSON array", e);
+        }
+        if (array == null || !array.isArray() || array.size() == 0) {
+            throw new IllegalArgumentException("Ids must be a non-empty JSON array");
+        }
+        if (array.size() > MAX_SIZE) {
+            throw new IllegalArgumentException(String.format("Fetching is limited to %d ids", MAX_SIZE));
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (JsonNode id : array) {
+            if (!id.isTextual() || StringUtils.isBlank(id.asText())) {
+                throw new IllegalArgumentException("Ids must be non-blank strings");
+            }
+            ids.add(id.asText());
+        }
+        return ids;
+    }
+
+    /**
+     * Fetch the entities with the given ids
+     * @param json a JSON array of ids
+     * @param finder finds the entity with a given id, returning null if there is none
+     * @return the found entities and the missing ids, as JSON
+     * @throws IllegalArgumentException if the ids are invalid
+     */
+    static <T> String fetch(final String json, final Function<String, T> finder) {
+        List<T> results = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : parseIds(json)) {
+            T found = finder.apply(id);
+            if (found == null) {
+                missing.add(id);
+            } else {
+                results.add(found);
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("results", results);
+        response.put("missing", missing);
+        try {
+            return mapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize fetched entities", e);
+        }
+    }
+}
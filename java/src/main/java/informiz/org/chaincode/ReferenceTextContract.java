@@ -1,11 +1,25 @@
 package informiz.org.chaincode;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import informiz.org.chaincode.model.PaginatedResults;
+import informiz.org.chaincode.model.ContractType;
 import informiz.org.chaincode.model.ReferenceText;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Score;
 import informiz.org.chaincode.model.Utils;
-import org.apache.commons.lang3.StringUtils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.IdGenerator;
+import informiz.org.chaincode.state.IdentityMap;
+import informiz.org.chaincode.state.IzContext;
+import informiz.org.chaincode.state.LegacyRecords;
+import informiz.org.chaincode.state.PageWriter;
+import informiz.org.chaincode.state.Projection;
+import informiz.org.chaincode.state.ReadOnlyGuard;
+import informiz.org.chaincode.state.ReviewStore;
+import informiz.org.chaincode.state.RichQuery;
+import informiz.org.chaincode.state.ScoreIndex;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
@@ -15,8 +29,13 @@ import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Java implementation of the ReferenceText Contract. The record contains:
@@ -25,7 +44,7 @@ import java.util.function.Function;
  * - The locale of the text
  * - A reference source-id (e.g for  the NASA website)
  * - A link to the reference (e.g the specific web page on the NASA website)
- * - Reviews by fact-checkers
+ * - Reviews by fact-checkers, each stored as a separate record on the ledger
  * - The current reliability/confidence score of the reference-text
  */
 @Contract(
@@ -43,11 +62,14 @@ import java.util.function.Function;
                         url = "https://informiz.org")))
 public final class ReferenceTextContract implements ContractInterface {
 
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private static ReadOnlyGuard readOnlyGuard = new ReadOnlyGuard(ReferenceTextContract.class);
 
     public enum ReferenceTextErrors {
         REFERENCE_TEXT_NOT_FOUND,
-        REFERENCE_TEXT_ALREADY_EXISTS
+        REFERENCE_TEXT_ALREADY_EXISTS,
+        REVIEW_NOT_FOUND
     }
 
     /**
@@ -61,6 +83,31 @@ public final class ReferenceTextContract implements ContractInterface {
     @Transaction
     public void init(final Context ctx) {}
 
+    /**
+     * Creates the transaction context, which reads and writes every record at most once per transaction.
+     * Read-only (evaluate) transactions get a stub that rejects any write.
+     *
+     * @param stub the transaction's stub
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new IzContext(readOnlyGuard.guard(stub));
+    }
+
+    /**
+     * Writes the records changed by the transaction to the ledger, each exactly once, and publishes the changed
+     * entities in a single event.
+     *
+     * @param ctx the transaction context
+     * @param result the result of the transaction
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        IzContext.records(ctx).flush();
+        IzContext.events(ctx).flush();
+    }
+
     // TODO: ************************************** TEST CODE, REMOVE THIS!! ******************************************
     /**
      * Creates some initial reference-texts on the ledger.
@@ -70,6 +117,7 @@ public final class ReferenceTextContract implements ContractInterface {
     @Transaction()
     public void initLedger(final Context ctx) {
         ChaincodeStub stub = ctx.getStub();
+        ChangeEvents events = IzContext.events(ctx);
 
         String[] srcData = {
                 "{ \"tid\": \"text-1\", \"text\": \"blah-1\", \"locale\": { \"language\": \"en\", \"country\": \"US\" }, \"sid\": \"source-1\", \"score\": { \"reliability\": 0.85, \"confidence\": 0.7 }}",
@@ -80,9 +128,14 @@ public final class ReferenceTextContract implements ContractInterface {
 
         for (int i = 0; i < srcData.length; i++) {
             try {
-                ReferenceText src = mapper.readValue(srcData[i], ReferenceText.class);
-                String srcState = mapper.writeValueAsString(src);
-                stub.putStringState(src.getSid(), srcState);
+                ReferenceText src = codec.decode(srcData[i].getBytes(StandardCharsets.UTF_8), ReferenceText.class);
+                byte[] srcState = codec.encode(src);
+                stub.putState(StateKeys.entityKey(ContractType.REF_TEXT, src.getTid()), srcState);
+                StateIndex.SOURCE_TEXTS.put(stub, src.getSid(), src.getTid());
+                ScoreIndex.put(stub, ContractType.REF_TEXT, src.getTid(), src.getScore());
+                StateIndex.RECENT.put(stub, ContractType.REF_TEXT.name(), StateKeys.newestFirst(stub.getTxTimestamp()),
+                        src.getTid());
+                events.record(ContractType.REF_TEXT, src.getTid(), ChangeEvents.Kind.CREATED, src.getScore());
             } catch (IOException e) {
                 throw new ChaincodeException("Failed to initialize reference-text info", e);
             }
@@ -98,24 +151,48 @@ public final class ReferenceTextContract implements ContractInterface {
      * @param tid the reference-text's ID
      * @return the reference-text found on the ledger if there was one
      */
-    @Transaction()
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
     public ReferenceText queryReferenceText(final Context ctx, final String tid) {
-        ChaincodeStub stub = ctx.getStub();
-        String refTextState = stub.getStringState(tid);
+        ReferenceText refText = findReferenceText(IzContext.records(ctx), tid);
 
-        if (StringUtils.isBlank(refTextState)) {
+        if (refText == null) {
             throw new ChaincodeException(String.format("ReferenceText %s does not exist", tid),
                     ReferenceTextErrors.REFERENCE_TEXT_NOT_FOUND.toString());
         }
+        return refText;
+    }
 
-        ReferenceText refText = null;
-        try {
-            refText = mapper.readValue(refTextState, ReferenceText.class);
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to deserialize reference-text info", e);
-        }
+    /**
+     * Retrieves many reference-texts by their keys (tid) from the ledger, in a single call.
+     *
+     * @param ctx the transaction context
+     * @param tids the reference-text IDs, as a JSON array, e.g <code>["tid-1","tid-2"]</code>
+     * @return the reference-texts found on the ledger and the IDs that were not found, in json format:
+     * <code>{"results":[...],"missing":[...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getReferenceTexts(final Context ctx, final String tids) {
+        IdentityMap records = IzContext.records(ctx);
+        return MultiGet.fetch(tids, (tid) -> findReferenceText(records, tid));
+    }
 
-        return refText;
+    /**
+     * Retrieves only the score of a reference-text, without its reviews or the rest of its record.
+     * This is the current score, derived from the reviews if they changed since the reference-text was last written.
+     *
+     * @param ctx the transaction context
+     * @param tid the reference-text ID
+     * @return the score of the reference-text found on the ledger if there was one
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public Score queryReferenceTextScore(final Context ctx, final String tid) {
+        Score score = ReviewStore.getScore(ctx.getStub(), ContractType.REF_TEXT, tid);
+
+        if (score == null) {
+            throw new ChaincodeException(String.format("ReferenceText %s does not exist", tid),
+                    ReferenceTextErrors.REFERENCE_TEXT_NOT_FOUND.toString());
+        }
+        return score;
     }
 
     /**
@@ -131,18 +208,66 @@ public final class ReferenceTextContract implements ContractInterface {
     public ReferenceText createReferenceText(final Context ctx, final String text,
                                              final String sid, final String link, final String locale) {
         Locale l =  Utils.localeFromString(locale);
-        ChaincodeStub stub = ctx.getStub();
 
-        ReferenceText refText = ReferenceText.createRefText(text, sid, link, l);
-        try {
-            String srcState = mapper.writeValueAsString(refText);
-            stub.putStringState(refText.getTid(), srcState);
-        } catch (JsonProcessingException e) {
-            throw new ChaincodeException("Failed to serialize refText info", e);
-        }
+        ReferenceText refText = ReferenceText.createRefText(
+                IzContext.ids(ctx).nextId(ContractType.REF_TEXT), text, sid, link, l);
+        putReferenceText(IzContext.records(ctx), refText);
+        IzContext.events(ctx).record(ContractType.REF_TEXT, refText.getTid(), ChangeEvents.Kind.CREATED,
+                refText.getScore());
         return refText;
     }
 
+    /**
+     * Creates a batch of new reference-texts on the ledger, in a single transaction.
+     * All the reference-texts are validated before any of them is written.
+     *
+     * @param ctx the transaction context
+     * @param batch a JSON array of up to 500 objects with the fields <code>text</code>, <code>sid</code>,
+     * <code>link</code> and <code>locale</code>
+     * @return the ids of the created reference-texts, as a JSON array, in the order of the batch
+     */
+    @Transaction()
+    public String createReferenceTextBatch(final Context ctx, final String batch) {
+        IdGenerator ids = IzContext.ids(ctx);
+
+        List<ReferenceText> created = BatchInput.parse(batch).map((item) -> ReferenceText.createRefText(
+                ids.nextId(ContractType.REF_TEXT),
+                BatchInput.required(item, "text"),
+                BatchInput.required(item, "sid"),
+                BatchInput.optional(item, "link"),
+                Utils.localeFromString(BatchInput.required(item, "locale"))));
+        IdentityMap records = IzContext.records(ctx);
+        ChangeEvents events = IzContext.events(ctx);
+        created.forEach((refText) -> {
+            putReferenceText(records, refText);
+            events.record(ContractType.REF_TEXT, refText.getTid(), ChangeEvents.Kind.CREATED, refText.getScore());
+        });
+        return BatchInput.ids(created.stream().map(ReferenceText::getTid).collect(Collectors.toList()));
+    }
+
+    /**
+     * Moves a page of reference-texts written under their plain ids, before entities were stored under namespaced keys,
+     * to their namespaced keys, and the reviews they hold to their own keys. Call until it migrates no more reference-
+     * texts.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @return the ids of the migrated reference-texts, as a JSON array
+     */
+    @Transaction()
+    public String migrateLegacyReferenceTexts(final Context ctx, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
+        int size = Utils.pageSizeFromString(pageSize);
+        List<String> migrated = new ArrayList<>();
+        for (ReferenceText refText : LegacyRecords.take(stub, ContractType.REF_TEXT, ReferenceText.class, size)) {
+            LegacyRecords.moveReviews(stub, ContractType.REF_TEXT, refText.getTid(), refText.getReviews());
+            putReferenceText(records, refText);
+            migrated.add(refText.getTid());
+        }
+        return BatchInput.ids(migrated);
+    }
+
     /**
      * Returns all the reference-texts currently on the ledger, in pages.
      * When an empty string is passed as a value to the <code>bookmark</code> argument,
@@ -154,20 +279,136 @@ public final class ReferenceTextContract implements ContractInterface {
      * @param ctx the transaction context
      * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
      * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
      * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
      */
-    @Transaction()
-    public PaginatedResults queryAllReferenceTexts(final Context ctx, final String pageSize, final String bookmark) {
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllReferenceTexts(final Context ctx, final String pageSize, final String bookmark,
+                                         final String fields) {
         int size = Utils.pageSizeFromString(pageSize);
         ChaincodeStub stub = ctx.getStub();
-        QueryResultsIteratorWithMetadata<KeyValue> states =
-                stub.getStateByRangeWithPagination("", "", size, bookmark);
+        QueryResultsIteratorWithMetadata<KeyValue> states = stub.getStateByPartialCompositeKeyWithPagination(
+                StateKeys.entityPrefix(ContractType.REF_TEXT), size, bookmark);
 
-        return new PaginatedResults(states);
+        return PageWriter.write(states, codec, Projection.parse(fields));
+    }
+
+    /**
+     * Returns the reference-texts of a source, in pages.
+     * The texts are looked up in the <code>sid~tid</code> index, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param sid the id of the source of the texts
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryReferenceTextsBySource(final Context ctx, final String sid,
+                                              final String pageSize, final String bookmark) {
+        int size = Utils.pageSizeFromString(pageSize);
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = StateIndex.SOURCE_TEXTS.page(stub, size, bookmark, sid);
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, StateIndex.lastAttribute(entry))));
+    }
+
+    /**
+     * Returns the most recently created reference-texts, newest first, in pages.
+     * The reference-texts are looked up in an index ordered by creation time, so a page costs the same however many
+     * reference-texts there are.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryRecentReferenceTexts(final Context ctx, final String pageSize, final String bookmark) {
+        int size = Utils.pageSizeFromString(pageSize);
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries =
+                StateIndex.RECENT.page(stub, size, bookmark, ContractType.REF_TEXT.name());
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, StateIndex.lastAttribute(entry))));
+    }
+
+    /**
+     * Returns the reference-texts of a source in a given locale, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param sid the id of the source of the texts
+     * @param locale the locale of the texts, in standard string form, e.g 'en_US'
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryReferenceTextsBySourceAndLocale(final Context ctx, final String sid, final String locale,
+                                                       final String pageSize, final String bookmark,
+                                                       final String fields) {
+        return RichQuery.select(ContractType.REF_TEXT)
+                .equalTo("sid", sid)
+                .equalTo("locale", Utils.localeFromString(locale).toString())
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the reference-texts with a reliability above a given value, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param minReliability the minimal reliability (exclusive)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryReferenceTextsByReliability(final Context ctx, final float minReliability,
+                                                   final String pageSize, final String bookmark,
+                                                   final String fields) {
+        return RichQuery.select(ContractType.REF_TEXT)
+                .greaterThan("score.reliability", minReliability)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the reference-texts within a score range, highest score first, in pages.
+     * The first page of the whole range is the top reference-texts, e.g the 20 most reliable ones for a page size
+     * of 20.
+     * The reference-texts are looked up in an index ordered by score, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param order the score component to order by, either 'reliability' or 'confidence'
+     * @param min the minimal score (inclusive), or an empty string for no lower bound
+     * @param max the maximal score (exclusive), or an empty string for no upper bound
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of reference-texts found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryReferenceTextsByScoreRange(final Context ctx, final String order,
+                                                  final String min, final String max,
+                                                  final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = ScoreIndex.forName(order).range(stub,
+                ContractType.REF_TEXT, Utils.scoreBoundFromString(min), Utils.scoreBoundFromString(max),
+                Utils.pageSizeFromString(pageSize), bookmark);
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, ScoreIndex.id(entry))));
     }
 
     /**
      * Changes the score of a reference-text on the ledger.
+     * The score stands until the reviews of the reference-text change, or its score is refreshed from them.
      *
      * @param ctx the transaction context
      * @param tid the reference-text id (its key on the ledger)
@@ -184,6 +425,24 @@ public final class ReferenceTextContract implements ContractInterface {
         return updateReferenceText(ctx, tid, updateScore);
     }
 
+    /**
+     * Fold the pending changes to a reference-text's review statistics into the reference-text on the ledger, and
+     * re-derive its score from the statistics.
+     * Any write of the reference-text folds the pending changes, so this only re-derives a score that was changed with
+     * <code>updateReferenceTextScore</code>, and brings the score indexes up to date with the reviews.
+     *
+     * @param ctx the transaction context
+     * @param tid the reference-text id (its key on the ledger)
+     * @return the updated ReferenceText
+     */
+    @Transaction()
+    public ReferenceText refreshReferenceTextScore(final Context ctx, final String tid) {
+        Function<ReferenceText, ReferenceText> refreshScore = (refText) -> {
+            refText.applyStatistics(new ReviewStatistics()); return refText;
+        };
+        return updateReferenceText(ctx, tid, refreshScore);
+    }
+
     /**
      * Update the link to a reference-text on the ledger.
      *
@@ -210,8 +469,18 @@ public final class ReferenceTextContract implements ContractInterface {
      */
     @Transaction()
     public ReferenceText updateReferenceTextSource(final Context ctx, final String tid, final String sid) {
+        ChaincodeStub stub = ctx.getStub();
         Function<ReferenceText, ReferenceText> updateSource = (refText) -> {
-            refText.setSid(sid); return refText;
+            if (!Objects.equals(sid, refText.getSid())) {
+                if (refText.getSid() != null) {
+                    StateIndex.SOURCE_TEXTS.delete(stub, refText.getSid(), tid);
+                }
+                if (sid != null) {
+                    StateIndex.SOURCE_TEXTS.put(stub, sid, tid);
+                }
+                refText.setSid(sid);
+            }
+            return refText;
         };
         return updateReferenceText(ctx, tid, updateSource);
     }
@@ -234,20 +503,27 @@ public final class ReferenceTextContract implements ContractInterface {
 
     /**
      * Add or update a fact-checker's review of a reference-text on the ledger.
+     * The review is stored as a separate record. The reference-text record itself is only read, to check that
+     * the reference-text exists, and is never written.
      *
      * @param ctx the transaction context
      * @param tid the reference-text id (its key on the ledger)
      * @param fcid the fact-checker's id
      * @param reliability the reliability assigned to the reference-text by the fact-checker
-     * @return the updated ReferenceText
+     * @return the stored Review
      */
     @Transaction()
-    public ReferenceText addOrUpdateReview(final Context ctx, final String tid, final String fcid,
-                                           final String reliability) {
-        Function<ReferenceText, ReferenceText> addRefTextReview = (refText) -> {
-            refText.addReview(fcid, Utils.reliabilityFromString(reliability)); return refText;
-        };
-        return updateReferenceText(ctx, tid, addRefTextReview);
+    public Review addOrUpdateReview(final Context ctx, final String tid, final String fcid,
+                                    final String reliability) {
+        ChaincodeStub stub = ctx.getStub();
+        if (!ReviewStore.exists(stub, ContractType.REF_TEXT, tid)) {
+            throw new ChaincodeException(String.format("ReferenceText %s does not exist", tid),
+                    ReferenceTextErrors.REFERENCE_TEXT_NOT_FOUND.toString());
+        }
+        Review review = ReviewStore.putReview(stub, ContractType.REF_TEXT, tid, fcid,
+                Utils.reliabilityFromString(reliability));
+        IzContext.events(ctx).record(ContractType.REF_TEXT, tid, ChangeEvents.Kind.REVIEWED, null);
+        return review;
     }
 
     /**
@@ -256,18 +532,40 @@ public final class ReferenceTextContract implements ContractInterface {
      * @param ctx the transaction context
      * @param tid the reference-text id (its key on the ledger)
      * @param fcid the fact-checker's id
-     * @return the updated ReferenceText
+     * @return the removed Review
      */
     @Transaction()
-    public ReferenceText removeReview(final Context ctx, final String tid, final String fcid) {
-        Function<ReferenceText, ReferenceText> removeRefTextReview = (refText) -> {
-            refText.removeReview(fcid); return refText;
-        };
-        return updateReferenceText(ctx, tid, removeRefTextReview);
+    public Review removeReview(final Context ctx, final String tid, final String fcid) {
+        ChaincodeStub stub = ctx.getStub();
+        Review removed = ReviewStore.removeReview(stub, ContractType.REF_TEXT, tid, fcid);
+
+        if (removed == null) {
+            String errorMessage = String.format("Fact-checker %s did not review reference-text %s", fcid, tid);
+            throw new ChaincodeException(errorMessage, ReferenceTextErrors.REVIEW_NOT_FOUND.toString());
+        }
+        IzContext.events(ctx).record(ContractType.REF_TEXT, tid, ChangeEvents.Kind.REVIEWED, null);
+        return removed;
     }
 
     /**
-     * Update a ReferenceText record on the ledger
+     * Write a new ReferenceText record to the ledger, and index it under its source, by score and by creation time
+     * @param records the records of the transaction
+     * @param refText the new reference-text
+     */
+    private void putReferenceText(final IdentityMap records, final ReferenceText refText) {
+        ChaincodeStub stub = records.getStub();
+        records.put(StateKeys.entityKey(ContractType.REF_TEXT, refText.getTid()), refText);
+        ScoreIndex.put(stub, ContractType.REF_TEXT, refText.getTid(), refText.getScore());
+        StateIndex.RECENT.put(stub, ContractType.REF_TEXT.name(), StateKeys.newestFirst(stub.getTxTimestamp()),
+                refText.getTid());
+        if (refText.getSid() != null) {
+            StateIndex.SOURCE_TEXTS.put(stub, refText.getSid(), refText.getTid());
+        }
+    }
+
+    /**
+     * Update a ReferenceText record on the ledger, and move it in the score indexes if its score changed.
+     * The pending changes to the reference-text's review statistics are folded into it before it is updated.
      * @param ctx thr transaction context
      * @param tid the reference-text id (its key on the ledger)
      * @param updateFunc an update function to execute on the reference-text
@@ -275,23 +573,47 @@ public final class ReferenceTextContract implements ContractInterface {
      */
     private ReferenceText updateReferenceText(final Context ctx, final String tid,
                                               final Function<ReferenceText, ReferenceText> updateFunc) {
-        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
 
-        String refTextState = stub.getStringState(tid);
+        String key = StateKeys.entityKey(ContractType.REF_TEXT, tid);
 
-        if (StringUtils.isBlank(refTextState)) {
+        ReferenceText refText = records.get(key, ReferenceText.class);
+
+        if (refText == null) {
             String errorMessage = String.format("Reference-text %s does not exist", tid);
             throw new ChaincodeException(errorMessage, ReferenceTextErrors.REFERENCE_TEXT_NOT_FOUND.toString());
         }
 
-        try {
-            ReferenceText refText = mapper.readValue(refTextState, ReferenceText.class);
-            updateFunc.apply(refText);
-            String newFcState = mapper.writeValueAsString(refText);
-            stub.putStringState(tid, newFcState);
-            return refText;
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to de/serialize reference-text info", e);
+        List<String> indexed = ScoreIndex.keys(ContractType.REF_TEXT, tid, refText.getScore());
+        ReviewStatistics pending = ReviewStore.foldPendingStatistics(records.getStub(), tid);
+        if (pending != null) {
+            refText.applyStatistics(pending);
         }
+        updateFunc.apply(refText);
+        records.put(key, refText);
+        ScoreIndex.move(records.getStub(), indexed, ScoreIndex.keys(ContractType.REF_TEXT, tid, refText.getScore()));
+        IzContext.events(ctx).record(ContractType.REF_TEXT, tid, ChangeEvents.Kind.UPDATED, refText.getScore());
+        return refText;
     }
+
+    /**
+     * A utility function for reading a copy of a reference-text from the ledger, along with its reviews and current
+     * score
+     * @param records the records of the transaction
+     * @param tid the reference-text id
+     * @return the copy of the reference-text, or null if there is no such reference-text
+     */
+    private ReferenceText findReferenceText(final IdentityMap records, final String tid) {
+        ReferenceText refText = records.copy(StateKeys.entityKey(ContractType.REF_TEXT, tid), ReferenceText.class);
+        if (refText != null) {
+            ChaincodeStub stub = records.getStub();
+            refText.getReviews().putAll(ReviewStore.getReviews(stub, tid));
+            ReviewStatistics pending = ReviewStore.getPendingStatistics(stub, tid);
+            if (pending != null) {
+                refText.applyStatistics(pending);
+            }
+        }
+        return refText;
+    }
+
 }
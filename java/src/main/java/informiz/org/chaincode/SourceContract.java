@@ -1,11 +1,24 @@
 package informiz.org.chaincode;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import informiz.org.chaincode.model.PaginatedResults;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
 import informiz.org.chaincode.model.Source;
 import informiz.org.chaincode.model.Utils;
-import org.apache.commons.lang3.StringUtils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.IdGenerator;
+import informiz.org.chaincode.state.IdentityMap;
+import informiz.org.chaincode.state.IzContext;
+import informiz.org.chaincode.state.LegacyRecords;
+import informiz.org.chaincode.state.PageWriter;
+import informiz.org.chaincode.state.Projection;
+import informiz.org.chaincode.state.ReadOnlyGuard;
+import informiz.org.chaincode.state.ReviewStore;
+import informiz.org.chaincode.state.RichQuery;
+import informiz.org.chaincode.state.ScoreHistory;
+import informiz.org.chaincode.state.ScoreIndex;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateKeys;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
@@ -14,15 +27,17 @@ import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Java implementation of the Source Contract. The record contains:
  * - The record's key in the ledger, as the source's id
  * - The current reliability/confidence score of the source
  * - The source's name
- * - Reviews by fact-checkers
+ * - Reviews by fact-checkers, each stored as a separate record on the ledger
  * It is expected that any additional metadata about the source will be stored on an external CMS (e.g SQL database).
  * The sid should be used as a reference key.
  */
@@ -43,11 +58,14 @@ import java.util.function.Consumer;
 
 public final class SourceContract implements ContractInterface {
 
-    private static ObjectMapper mapper = new ObjectMapper();
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private static ReadOnlyGuard readOnlyGuard = new ReadOnlyGuard(SourceContract.class);
 
     public enum SourceErrors {
         SOURCE_NOT_FOUND,
-        SOURCE_ALREADY_EXISTS
+        SOURCE_ALREADY_EXISTS,
+        REVIEW_NOT_FOUND
     }
 
     /**
@@ -61,6 +79,31 @@ public final class SourceContract implements ContractInterface {
     @Transaction
     public void init(final Context ctx) {}
 
+    /**
+     * Creates the transaction context, which reads and writes every record at most once per transaction.
+     * Read-only (evaluate) transactions get a stub that rejects any write.
+     *
+     * @param stub the transaction's stub
+     * @return the transaction context
+     */
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        return new IzContext(readOnlyGuard.guard(stub));
+    }
+
+    /**
+     * Writes the records changed by the transaction to the ledger, each exactly once, and publishes the changed
+     * entities in a single event.
+     *
+     * @param ctx the transaction context
+     * @param result the result of the transaction
+     */
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        IzContext.records(ctx).flush();
+        IzContext.events(ctx).flush();
+    }
+
     /**
      * Retrieves a source with the specified key (sid) from the ledger.
      *
@@ -68,10 +111,44 @@ public final class SourceContract implements ContractInterface {
      * @param sid the source ID
      * @return the source found on the ledger if there was one
      */
-    @Transaction()
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Source querySource(final Context ctx, final String sid) {
-        ChaincodeStub stub = ctx.getStub();
-        return updateSource(sid, stub, src -> {});
+        Source source = findSource(IzContext.records(ctx), sid);
+
+        if (source == null) {
+            String errorMessage = String.format("Source %s does not exist", sid);
+            throw new ChaincodeException(errorMessage, SourceErrors.SOURCE_NOT_FOUND.toString());
+        }
+        return source;
+    }
+
+    /**
+     * Returns the timeline of a source's score, downsampled to at most the given number of points.
+     * Only the score of each historic value of the source is decoded.
+     *
+     * @param ctx the transaction context
+     * @param sid the source ID
+     * @param maxPoints the maximal number of points, limited to 1-1000
+     * @return the score timeline, oldest first, in json format:
+     * <code>{"points":[{"time":epochMillis,"reliability":0.8,"confidence":0.6},...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String querySourceScoreHistory(final Context ctx, final String sid, final int maxPoints) {
+        return ScoreHistory.query(ctx.getStub(), StateKeys.entityKey(ContractType.SOURCE, sid), codec, maxPoints);
+    }
+
+    /**
+     * Retrieves many sources by their keys (sid) from the ledger, in a single call.
+     *
+     * @param ctx the transaction context
+     * @param sids the source IDs, as a JSON array, e.g <code>["sid-1","sid-2"]</code>
+     * @return the sources found on the ledger and the IDs that were not found, in json format:
+     * <code>{"results":[...],"missing":[...]}</code>
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String getSources(final Context ctx, final String sids) {
+        IdentityMap records = IzContext.records(ctx);
+        return MultiGet.fetch(sids, (sid) -> findSource(records, sid));
     }
 
     /**
@@ -83,22 +160,87 @@ public final class SourceContract implements ContractInterface {
      * can be used as a value to the bookmark argument.
      *
      * @param ctx the transaction context
-     * @param pageSize the page size TODO: should be int
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
      * @param bookmark the bookmark
-     * @return the source found on the ledger if there was one
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of sources found on the ledger, in json format, starting from the given bookmark
      */
-    @Transaction()
-    public String queryAllSources(final Context ctx, final String pageSize, final String bookmark) {
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String queryAllSources(final Context ctx, final String pageSize, final String bookmark,
+                                  final String fields) {
         ChaincodeStub stub = ctx.getStub();
-        QueryResultsIteratorWithMetadata<KeyValue> states =
-                stub.getStateByRangeWithPagination("", "", Integer.valueOf(pageSize), bookmark);
+        QueryResultsIteratorWithMetadata<KeyValue> states = stub.getStateByPartialCompositeKeyWithPagination(
+                StateKeys.entityPrefix(ContractType.SOURCE), Utils.pageSizeFromString(pageSize), bookmark);
 
-        try {
-            return mapper.writeValueAsString(new PaginatedResults(states));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to serialize query result", e);
-        }
+        return PageWriter.write(states, codec, Projection.parse(fields));
+    }
 
+    /**
+     * Returns the sources with a reliability above a given value, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param minReliability the minimal reliability (exclusive)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of sources found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String querySourcesByReliability(final Context ctx, final float minReliability,
+                                            final String pageSize, final String bookmark,
+                                            final String fields) {
+        return RichQuery.select(ContractType.SOURCE)
+                .greaterThan("score.reliability", minReliability)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the sources with a confidence above a given value, in pages.
+     * Requires a CouchDB state database, and records written in the JSON state format.
+     *
+     * @param ctx the transaction context
+     * @param minConfidence the minimal confidence (exclusive)
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @param fields the fields to return, as a JSON array of field names, or an empty string for whole records
+     * @return a page of sources found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String querySourcesByConfidence(final Context ctx, final float minConfidence,
+                                           final String pageSize, final String bookmark,
+                                           final String fields) {
+        return RichQuery.select(ContractType.SOURCE)
+                .greaterThan("score.confidence", minConfidence)
+                .project(Projection.parse(fields))
+                .execute(ctx.getStub(), codec, Utils.pageSizeFromString(pageSize), bookmark);
+    }
+
+    /**
+     * Returns the sources within a score range, highest score first, in pages.
+     * The first page of the whole range is the top sources, e.g the 20 most reliable ones for a page size of 20.
+     * The sources are looked up in an index ordered by score, which works on any state database.
+     *
+     * @param ctx the transaction context
+     * @param order the score component to order by, either 'reliability' or 'confidence'
+     * @param min the minimal score (inclusive), or an empty string for no lower bound
+     * @param max the maximal score (exclusive), or an empty string for no upper bound
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @param bookmark the bookmark
+     * @return a page of sources found on the ledger, in json format, starting from the given bookmark
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String querySourcesByScoreRange(final Context ctx, final String order,
+                                           final String min, final String max,
+                                           final String pageSize, final String bookmark) {
+        ChaincodeStub stub = ctx.getStub();
+        QueryResultsIteratorWithMetadata<KeyValue> entries = ScoreIndex.forName(order).range(stub,
+                ContractType.SOURCE, Utils.scoreBoundFromString(min), Utils.scoreBoundFromString(max),
+                Utils.pageSizeFromString(pageSize), bookmark);
+
+        return PageWriter.write(entries, codec, (entry) ->
+                stub.getState(StateKeys.entityKey(ContractType.SOURCE, ScoreIndex.id(entry))));
     }
 
     /**
@@ -112,16 +254,61 @@ public final class SourceContract implements ContractInterface {
      */
     @Transaction()
     public Source createSource(final Context ctx, final String name, final String reliability, final String confidence) {
-        ChaincodeStub stub = ctx.getStub();
+        Source source = Source.createSource(IzContext.ids(ctx).nextId(ContractType.SOURCE),
+                name, Utils.createScore(reliability, confidence));
+        IdentityMap records = IzContext.records(ctx);
+        putSource(records, source);
+        IzContext.events(ctx).record(ContractType.SOURCE, source.getSid(), ChangeEvents.Kind.CREATED,
+                source.getScore());
+        return source;
+    }
+
+    /**
+     * Creates a batch of new sources on the ledger, in a single transaction.
+     * All the sources are validated before any of them is written.
+     *
+     * @param ctx the transaction context
+     * @param batch a JSON array of up to 500 objects with the fields <code>name</code>, <code>reliability</code>
+     * and <code>confidence</code>
+     * @return the ids of the created sources, as a JSON array, in the order of the batch
+     */
+    @Transaction()
+    public String createSourceBatch(final Context ctx, final String batch) {
+        IdGenerator ids = IzContext.ids(ctx);
+
+        List<Source> created = BatchInput.parse(batch).map((item) -> Source.createSource(
+                ids.nextId(ContractType.SOURCE),
+                BatchInput.required(item, "name"),
+                Utils.createScore(BatchInput.required(item, "reliability"), BatchInput.required(item, "confidence"))));
+        IdentityMap records = IzContext.records(ctx);
+        ChangeEvents events = IzContext.events(ctx);
+        created.forEach((source) -> {
+            putSource(records, source);
+            events.record(ContractType.SOURCE, source.getSid(), ChangeEvents.Kind.CREATED, source.getScore());
+        });
+        return BatchInput.ids(created.stream().map(Source::getSid).collect(Collectors.toList()));
+    }
 
-        Source source = Source.createSource(name, Utils.createScore(reliability, confidence));
-        try {
-            String srcState = mapper.writeValueAsString(source);
-            stub.putStringState(source.getSid(), srcState);
-        } catch (JsonProcessingException e) {
-            throw new ChaincodeException("Failed to serialize source info", e);
+    /**
+     * Moves a page of sources written under their plain ids, before entities were stored under namespaced keys, to
+     * their namespaced keys, and the reviews they hold to their own keys. Call until it migrates no more sources.
+     *
+     * @param ctx the transaction context
+     * @param pageSize the page size, as a string. Size is limited to 10-100 items per page
+     * @return the ids of the migrated sources, as a JSON array
+     */
+    @Transaction()
+    public String migrateLegacySources(final Context ctx, final String pageSize) {
+        ChaincodeStub stub = ctx.getStub();
+        IdentityMap records = IzContext.records(ctx);
+        int size = Utils.pageSizeFromString(pageSize);
+        List<String> migrated = new ArrayList<>();
+        for (Source source : LegacyRecords.take(stub, ContractType.SOURCE, Source.class, size)) {
+            LegacyRecords.moveReviews(stub, ContractType.SOURCE, source.getSid(), source.getReviews());
+            putSource(records, source);
+            migrated.add(source.getSid());
         }
-        return source;
+        return BatchInput.ids(migrated);
     }
 
     /**
@@ -134,25 +321,31 @@ public final class SourceContract implements ContractInterface {
      */
     @Transaction()
     public Source updateSourceName(final Context ctx, final String sid, final String name) {
-        ChaincodeStub stub = ctx.getStub();
-
-        return updateSource(sid, stub, src -> src.setName(name));
+        return updateSource(ctx, sid, src -> src.setName(name));
     }
 
     /**
      * Add a review to a source on the ledger.
+     * The review is stored as a separate record. The source record itself is only read, to check that the source
+     * exists, and is never written.
      *
      * @param ctx the transaction context
      * @param sid the key associated with the source on the ledger
      * @param factCheckerId the reviewing fact-checker's id
      * @param reliability the reliability given by the fact-checker to the souorce
-     * @return the updated Source
+     * @return the stored Review
      */
     @Transaction()
-    public Source addReview(final Context ctx, final String sid, final String factCheckerId, float reliability) {
+    public Review addReview(final Context ctx, final String sid, final String factCheckerId, float reliability) {
         ChaincodeStub stub = ctx.getStub();
 
-        return updateSource(sid, stub, src -> src.addReview(factCheckerId, reliability));
+        if (!ReviewStore.exists(stub, ContractType.SOURCE, sid)) {
+            throw new ChaincodeException(String.format("Source %s does not exist", sid),
+                    SourceErrors.SOURCE_NOT_FOUND.toString());
+        }
+        Review review = ReviewStore.putReview(stub, ContractType.SOURCE, sid, factCheckerId, reliability);
+        IzContext.events(ctx).record(ContractType.SOURCE, sid, ChangeEvents.Kind.REVIEWED, null);
+        return review;
     }
 
     /**
@@ -161,17 +354,24 @@ public final class SourceContract implements ContractInterface {
      * @param ctx the transaction context
      * @param sid the key associated with the source on the ledger
      * @param factCheckerId the reviewing fact-checker's id
-     * @return the updated Source
+     * @return the removed Review
      */
     @Transaction()
-    public Source removeReview(final Context ctx, final String sid, final String factCheckerId) {
+    public Review removeReview(final Context ctx, final String sid, final String factCheckerId) {
         ChaincodeStub stub = ctx.getStub();
+        Review removed = ReviewStore.removeReview(stub, ContractType.SOURCE, sid, factCheckerId);
 
-        return updateSource(sid, stub, src -> src.removeReview(factCheckerId));
+        if (removed == null) {
+            String errorMessage = String.format("Fact-checker %s did not review source %s", factCheckerId, sid);
+            throw new ChaincodeException(errorMessage, SourceErrors.REVIEW_NOT_FOUND.toString());
+        }
+        IzContext.events(ctx).record(ContractType.SOURCE, sid, ChangeEvents.Kind.REVIEWED, null);
+        return removed;
     }
 
     /**
      * Changes the score of a source on the ledger.
+     * The score stands until the reviews of the source change, or its score is refreshed from them.
      *
      * @param ctx the transaction context
      * @param sid the key associated with the source on the ledger
@@ -181,34 +381,88 @@ public final class SourceContract implements ContractInterface {
      */
     @Transaction()
     public Source updateSourceScore(final Context ctx, final String sid, final String reliability, final String confidence) {
-        ChaincodeStub stub = ctx.getStub();
+        return updateSource(ctx, sid,
+                src -> src.setScore(Utils.createScore(reliability, confidence)));
+    }
 
-        return updateSource(sid, stub, src -> src.setScore(Utils.createScore(reliability, confidence)));
+    /**
+     * Fold the pending changes to a source's review statistics into the source on the ledger, and re-derive its
+     * score from the statistics.
+     * Any write of the source folds the pending changes, so this only re-derives a score that was changed with
+     * <code>updateSourceScore</code>, and brings the score indexes up to date with the reviews.
+     *
+     * @param ctx the transaction context
+     * @param sid the key associated with the source on the ledger
+     * @return the updated Source
+     */
+    @Transaction()
+    public Source refreshSourceScore(final Context ctx, final String sid) {
+        return updateSource(ctx, sid, src -> src.applyStatistics(new ReviewStatistics()));
     }
 
     /**
-     * A utility function for updating a source on the ledger
+     * A utility function for updating a source on the ledger, and moving it in the score indexes if its score changed
+     * The pending changes to the source's review statistics are folded into it before it is updated.
+     * @param ctx the transaction context
      * @param sid the source's id on the ledger
-     * @param stub a chaincode stub
      * @param updateFunc a consumer function for updating the source
      * @return the updated source
      */
-    private Source updateSource(final String sid, final ChaincodeStub stub, final Consumer<Source> updateFunc) {
-        String srcState = stub.getStringState(sid);
+    private Source updateSource(final Context ctx, final String sid, final Consumer<Source> updateFunc) {
+        IdentityMap records = IzContext.records(ctx);
+        Source source = readSource(sid, records);
+        List<String> indexed = ScoreIndex.keys(ContractType.SOURCE, sid, source.getScore());
+        ReviewStatistics pending = ReviewStore.foldPendingStatistics(records.getStub(), sid);
+        if (pending != null) {
+            source.applyStatistics(pending);
+        }
+        updateFunc.accept(source);
+        records.put(StateKeys.entityKey(ContractType.SOURCE, sid), source);
+        ScoreIndex.move(records.getStub(), indexed, ScoreIndex.keys(ContractType.SOURCE, sid, source.getScore()));
+        IzContext.events(ctx).record(ContractType.SOURCE, sid, ChangeEvents.Kind.UPDATED, source.getScore());
+        return source;
+    }
+
+    /**
+     * Write a new Source record to the ledger, and add it to the score indexes
+     * @param records the records of the transaction
+     * @param source the new source
+     */
+    private void putSource(final IdentityMap records, final Source source) {
+        records.put(StateKeys.entityKey(ContractType.SOURCE, source.getSid()), source);
+        ScoreIndex.put(records.getStub(), ContractType.SOURCE, source.getSid(), source.getScore());
+    }
 
-        if (StringUtils.isBlank(srcState)) {
+    /**
+     * A utility function for reading a source from the ledger, without writing it back
+     * @param sid the source's id on the ledger
+     * @param records the records of the transaction
+     * @return the source
+     */
+    private Source readSource(final String sid, final IdentityMap records) {
+        Source source = records.get(StateKeys.entityKey(ContractType.SOURCE, sid), Source.class);
+
+        if (source == null) {
             String errorMessage = String.format("Source %s does not exist", sid);
             throw new ChaincodeException(errorMessage, SourceErrors.SOURCE_NOT_FOUND.toString());
         }
+        return source;
+    }
 
-        Source source;
-        try {
-            source = mapper.readValue(srcState, Source.class);
-            updateFunc.accept(source);
-            String newFcState = mapper.writeValueAsString(source);
-            stub.putStringState(sid, newFcState);
-        } catch (IOException e) {
-            throw new ChaincodeException("Failed to de/serialize source info", e);
+    /**
+     * A utility function for reading a copy of a source from the ledger, along with its reviews and current score
+     * @param records the records of the transaction
+     * @param sid the source's id on the ledger
+     * @return the copy of the source, or null if there is no such source
+     */
+    private Source findSource(final IdentityMap records, final String sid) {
+        Source source = records.copy(StateKeys.entityKey(ContractType.SOURCE, sid), Source.class);
+        if (source != null) {
+            source.getReviews().putAll(ReviewStore.getReviews(records.getStub(), sid));
+            ReviewStatistics pending = ReviewStore.getPendingStatistics(records.getStub(), sid);
+            if (pending != null) {
+                source.applyStatistics(pending);
+            }
         }
         return source;
     }
@@ -1,6 +1,7 @@
 package informiz.org.chaincode.model;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
@@ -15,6 +16,7 @@ import org.hyperledger.fabric.contract.annotation.Property;
  *  * - a boolean indicating if the fact-checker is active (a fact-checker is never deleted, only deactivated)
  * Any additional metadata should be saved on a separate CMS
  */
+@JsonIgnoreProperties(value = {"docType"}, allowGetters = true)
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 @DataType()
 public final class FactChecker {
@@ -39,13 +41,17 @@ public final class FactChecker {
 
 
     private FactChecker() {
-        setFcid(Utils.createUuid(ContractType.FACT_CHECKER));
         setScore(new Score());
         setActive(true);
     }
 
     public static FactChecker createFactChecker(String name, Score score) {
+        return createFactChecker(Utils.createUuid(ContractType.FACT_CHECKER), name, score);
+    }
+
+    public static FactChecker createFactChecker(String fcid, String name, Score score) {
         FactChecker factChecker = new FactChecker();
+        factChecker.setFcid(fcid);
         factChecker.setName(name);
         if (score != null) {
             factChecker.setScore(score);
@@ -57,6 +63,13 @@ public final class FactChecker {
         return createFactChecker(name, new Score(reliability, confidence));
     }
 
+    /**
+     * @return the type of the record, stored with it to tell the types of records apart in rich queries
+     */
+    public String getDocType() {
+        return ContractType.FACT_CHECKER.name();
+    }
+
     public String getFcid() {
         return fcid;
     }
@@ -6,6 +6,7 @@ package informiz.org.chaincode.model;
 
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
@@ -19,9 +20,10 @@ import java.util.Map;
  * - a locale
  * - the current reliability/confidence score
  * - supporting references
- * - reviews by fact-checkers
+ * - reviews by fact-checkers, and the running statistics the score is derived from
  * Any additional metadata should be saved on a separate CMS
  */
+@JsonIgnoreProperties(value = {"docType"}, allowGetters = true)
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 @DataType()
 public final class Hypothesis {
@@ -41,22 +43,36 @@ public final class Hypothesis {
     @Property()
     private Map<String, Float> reviews = new HashMap<>(); // TODO: keep review dates as well?
 
+    @Property()
+    private ReviewStatistics statistics = new ReviewStatistics();
+
     @Property()
     private Map<String, String> references = new HashMap<>(); // TODO: do spark auto-generated encoders support Set<>?
 
     private Hypothesis() {
-        setHid(Utils.createUuid(ContractType.HYPOTHESIS));
         setScore(new Score());
     }
 
     public static Hypothesis createHypothesis(String claim, Locale locale) {
+        return createHypothesis(Utils.createUuid(ContractType.HYPOTHESIS), claim, locale);
+    }
+
+    public static Hypothesis createHypothesis(String hid, String claim, Locale locale) {
         Hypothesis hypothesis = new Hypothesis();
+        hypothesis.setHid(hid);
         hypothesis.setClaim(claim);
         hypothesis.setLocale(locale);
         return hypothesis;
     }
 
-        public String getHid() {
+    /**
+     * @return the type of the record, stored with it to tell the types of records apart in rich queries
+     */
+    public String getDocType() {
+        return ContractType.HYPOTHESIS.name();
+    }
+
+    public String getHid() {
         return hid;
     }
 
@@ -97,7 +113,9 @@ public final class Hypothesis {
      * @see Map#put(Object, Object)
      */
     public Float addReview(String fcid, float reliability) {
-        return reviews.put(fcid, reliability);
+        Float previous = reviews.put(fcid, reliability);
+        applyStatistics(ReviewStatistics.change(previous, reliability));
+        return previous;
     }
 
     /**
@@ -107,13 +125,33 @@ public final class Hypothesis {
      * @see Map#remove(Object)
      */
     public Float removeReview(String fcid) {
-        return reviews.remove(fcid);
+        Float removed = reviews.remove(fcid);
+        if (removed != null) {
+            applyStatistics(ReviewStatistics.change(removed, null));
+        }
+        return removed;
     }
 
     public Map<String, Float> getReviews() {
         return reviews;
     }
 
+    public ReviewStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Merge a change in review statistics into this hypothesis and re-derive its score from the statistics
+     * @param delta the change in the review statistics
+     */
+    public void applyStatistics(ReviewStatistics delta) {
+        statistics.merge(delta);
+        Score derived = statistics.toScore();
+        if (derived != null) {
+            setScore(derived);
+        }
+    }
+
     /**
      * Add a reference to this hypothesis
      * @param tid the reference-text's id on the ledger
@@ -130,8 +168,8 @@ public final class Hypothesis {
      * @return the reference-text's id, if it was assigned to the hypothesis
      * @see Map#remove(Object)
      */
-    public Float removeReference(String tid) {
-        return reviews.remove(tid);
+    public String removeReference(String tid) {
+        return references.remove(tid);
     }
 
     public Map<String, String> getReferences() {
@@ -6,6 +6,7 @@ package informiz.org.chaincode.model;
 
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
@@ -20,9 +21,10 @@ import java.util.Map;
  * - the id of the source for the reference (e.g the NASA website)
  * - a link to the source of the reference (e.g the specific page on the NASA website)
  * - the current reliability/confidence score
- * - reviews by fact-checkers
+ * - reviews by fact-checkers, and the running statistics the score is derived from
  * Any additional metadata should be saved on a separate CMS
  */
+@JsonIgnoreProperties(value = {"docType"}, allowGetters = true)
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 @DataType()
 public final class ReferenceText {
@@ -48,13 +50,20 @@ public final class ReferenceText {
     @Property()
     private HashMap<String, Float> reviews = new HashMap<>();
 
+    @Property()
+    private ReviewStatistics statistics = new ReviewStatistics();
+
     private ReferenceText() {
-        setTid(Utils.createUuid(ContractType.REF_TEXT));
         setScore(new Score());
     }
 
     public static ReferenceText createRefText(String text, String sid, String link, Locale locale) {
+        return createRefText(Utils.createUuid(ContractType.REF_TEXT), text, sid, link, locale);
+    }
+
+    public static ReferenceText createRefText(String tid, String text, String sid, String link, Locale locale) {
         ReferenceText refText = new ReferenceText();
+        refText.setTid(tid);
         refText.setText(text);
         refText.setLocale(locale);
         refText.setSid(sid);
@@ -62,7 +71,14 @@ public final class ReferenceText {
         return refText;
     }
 
-        public String getTid() {
+    /**
+     * @return the type of the record, stored with it to tell the types of records apart in rich queries
+     */
+    public String getDocType() {
+        return ContractType.REF_TEXT.name();
+    }
+
+    public String getTid() {
         return tid;
     }
 
@@ -119,7 +135,9 @@ public final class ReferenceText {
      * @see Map#put(Object, Object)
      */
     public Float addReview(String fcid, float reliability) {
-        return reviews.put(fcid, reliability);
+        Float previous = reviews.put(fcid, reliability);
+        applyStatistics(ReviewStatistics.change(previous, reliability));
+        return previous;
     }
 
     /**
@@ -129,13 +147,33 @@ public final class ReferenceText {
      * @see Map#remove(Object)
      */
     public Float removeReview(String fcid) {
-        return reviews.remove(fcid);
+        Float removed = reviews.remove(fcid);
+        if (removed != null) {
+            applyStatistics(ReviewStatistics.change(removed, null));
+        }
+        return removed;
     }
 
     public Map<String, Float> getReviews() {
         return reviews;
     }
 
+    public ReviewStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Merge a change in review statistics into this reference-text and re-derive its score from the statistics
+     * @param delta the change in the review statistics
+     */
+    public void applyStatistics(ReviewStatistics delta) {
+        statistics.merge(delta);
+        Score derived = statistics.toScore();
+        if (derived != null) {
+            setScore(derived);
+        }
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
@@ -0,0 +1,104 @@
+package informiz.org.chaincode.model;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * A data-type representing a fact-checker's review of a hypothesis, reference-text or source:
+ * - the type of the reviewed entity
+ * - the id of the reviewed entity
+ * - the id of the reviewing fact-checker
+ * - the reliability given by the fact-checker
+ * Reviews are stored on the ledger separately from the reviewed entity, one record per entity and fact-checker
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+@DataType()
+public final class Review {
+
+    @Property()
+    private String entityType;
+
+    @Property()
+    private String entityId;
+
+    @Property()
+    private String fcid;
+
+    @Property(schema = {"minimum", "0", "maximum", "1"})
+    private Float reliability;
+
+    private Review() {}
+
+    public static Review createReview(String entityId, String fcid, float reliability) {
+        Review review = new Review();
+        review.setEntityId(entityId);
+        review.setFcid(fcid);
+        review.setReliability(reliability);
+        return review;
+    }
+
+    public static Review createReview(ContractType entityType, String entityId, String fcid, float reliability) {
+        Review review = createReview(entityId, fcid, reliability);
+        review.setEntityType(entityType.name());
+        return review;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    private void setEntityType(String entityType) {
+        this.entityType = entityType;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    private void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
+    public String getFcid() {
+        return fcid;
+    }
+
+    private void setFcid(String fcid) {
+        this.fcid = fcid;
+    }
+
+    public Float getReliability() {
+        return reliability;
+    }
+
+    public void setReliability(Float reliability) {
+        this.reliability = reliability;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        Review other = (Review) obj;
+
+        return this.entityId.equals(other.entityId) && this.fcid.equals(other.fcid);
+    }
+
+    @Override
+    public int hashCode() {
+        return (entityId + fcid).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ \"entityId\": \"%s\", \"fcid\": \"%s\", \"reliability\": %.2f }",
+                entityId, fcid, reliability);
+    }
+}
@@ -0,0 +1,129 @@
+package informiz.org.chaincode.model;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+/**
+ * Running sufficient statistics (count, sum and sum of squares) of the reliabilities given to an entity by
+ * fact-checkers. Adding, replacing or removing a review updates the statistics in O(1), and the entity's score is
+ * derived from them:
+ * - reliability is the mean of the reviews
+ * - confidence grows with the number of reviews and shrinks with their spread
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+@DataType()
+public final class ReviewStatistics {
+
+    /**
+     * The number of reviews at which confidence reaches half of the reviewers' agreement
+     */
+    private static final float CONFIDENCE_HALF_COUNT = 3.0f;
+
+    @Property()
+    private int count;
+
+    @Property()
+    private double sum;
+
+    @Property()
+    private double sumOfSquares;
+
+    public ReviewStatistics() {}
+
+    /**
+     * The change in statistics caused by a single fact-checker changing their review
+     * @param previous the previous reliability given by the fact-checker, or null if this is a new review
+     * @param current the new reliability given by the fact-checker, or null if the review was removed
+     * @return the statistics delta, to be merged into the entity's statistics
+     */
+    public static ReviewStatistics change(Float previous, Float current) {
+        ReviewStatistics delta = new ReviewStatistics();
+        if (previous != null) {
+            delta.remove(previous);
+        }
+        if (current != null) {
+            delta.add(current);
+        }
+        return delta;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSumOfSquares() {
+        return sumOfSquares;
+    }
+
+    public void add(float reliability) {
+        count++;
+        sum += reliability;
+        sumOfSquares += (double) reliability * reliability;
+    }
+
+    public void remove(float reliability) {
+        count--;
+        sum -= reliability;
+        sumOfSquares -= (double) reliability * reliability;
+    }
+
+    public void merge(ReviewStatistics other) {
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+    }
+
+    /**
+     * Derive a score from the statistics
+     * @return the derived score, or null if there are no reviews to derive a score from
+     */
+    public Score toScore() {
+        if (count <= 0) {
+            return null;
+        }
+        double mean = clamp(sum / count);
+        double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+        // reliabilities are in [0, 1], so the standard deviation is at most 0.5
+        double agreement = clamp(1.0 - 2.0 * Math.sqrt(variance));
+        double support = count / (count + CONFIDENCE_HALF_COUNT);
+
+        Score score = new Score();
+        score.setReliability((float) mean);
+        score.setConfidence((float) (support * agreement));
+        return score;
+    }
+
+    private static double clamp(double value) {
+        return Math.min(1.0, Math.max(0.0, value));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if ((obj == null) || (getClass() != obj.getClass())) {
+            return false;
+        }
+
+        ReviewStatistics other = (ReviewStatistics) obj;
+
+        return this.count == other.count && this.sum == other.sum && this.sumOfSquares == other.sumOfSquares;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{ \"count\": %d, \"sum\": %f, \"sumOfSquares\": %f }", count, sum, sumOfSquares);
+    }
+}
@@ -1,6 +1,7 @@
 package informiz.org.chaincode.model;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
@@ -12,9 +13,10 @@ import java.util.Map;
  * - the id of the source
  * - the source's name
  * - the current reliability/confidence score
- * - reviews by fact-checkers
+ * - reviews by fact-checkers, and the running statistics the score is derived from
  * Any additional metadata should be saved on a separate CMS
  */
+@JsonIgnoreProperties(value = {"docType"}, allowGetters = true)
 @JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
 @DataType()
 public final class Source {
@@ -31,13 +33,20 @@ public final class Source {
     @Property()
     private HashMap<String, Float> reviews = new HashMap<>();
 
+    @Property()
+    private ReviewStatistics statistics = new ReviewStatistics();
+
     private Source() {
-        setSid(Utils.createUuid(ContractType.SOURCE));
         setScore(new Score());
     }
 
     public static Source createSource(String name, Score score) {
+        return createSource(Utils.createUuid(ContractType.SOURCE), name, score);
+    }
+
+    public static Source createSource(String sid, String name, Score score) {
         Source source = new Source();
+        source.setSid(sid);
         source.setName(name);
         if (score != null) {
             source.setScore(score);
@@ -49,6 +58,13 @@ public final class Source {
         return createSource(name, new Score(reliability, confidence));
     }
 
+    /**
+     * @return the type of the record, stored with it to tell the types of records apart in rich queries
+     */
+    public String getDocType() {
+        return ContractType.SOURCE.name();
+    }
+
     public String getSid() {
         return sid;
     }
@@ -81,7 +97,9 @@ public final class Source {
      * @see Map#put(Object, Object)
      */
     public Float addReview(String fcid, float reliability) {
-        return reviews.put(fcid, reliability);
+        Float previous = reviews.put(fcid, reliability);
+        applyStatistics(ReviewStatistics.change(previous, reliability));
+        return previous;
     }
 
     /**
@@ -91,13 +109,33 @@ public final class Source {
      * @see Map#remove(Object)
      */
     public Float removeReview(String fcid) {
-        return reviews.remove(fcid);
+        Float removed = reviews.remove(fcid);
+        if (removed != null) {
+            applyStatistics(ReviewStatistics.change(removed, null));
+        }
+        return removed;
     }
 
     public Map<String, Float> getReviews() {
         return reviews;
     }
 
+    public ReviewStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Merge a change in review statistics into this source and re-derive its score from the statistics
+     * @param delta the change in the review statistics
+     */
+    public void applyStatistics(ReviewStatistics delta) {
+        statistics.merge(delta);
+        Score derived = statistics.toScore();
+        if (derived != null) {
+            setScore(derived);
+        }
+    }
+
     @Override
     public boolean equals(final Object obj) {
         if (this == obj) {
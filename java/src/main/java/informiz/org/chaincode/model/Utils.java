@@ -2,20 +2,20 @@ package informiz.org.chaincode.model;
 
 import org.apache.commons.lang3.LocaleUtils;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.Locale;
 import java.util.UUID;
 
 public class Utils {
 
+    /**
+     * Create a random id, for entities created off-ledger. Ids of entities created by a transaction should be
+     * generated from the transaction context, so that they are identical on all endorsing peers.
+     * @param contractType the type of entity the id is for
+     * @return a random id
+     * @see informiz.org.chaincode.state.IdGenerator
+     */
     protected static String createUuid(ContractType contractType) {
-        try {
-            // TODO: consider creating a complex key for couchDB key-based queries
-            return contractType + "-" + UUID.randomUUID().toString() + "-" + InetAddress.getLocalHost().getHostName();
-        } catch (UnknownHostException e) {
-            throw new IllegalStateException("Cannot generate unique id, need access to local host-name");
-        }
+        return contractType + "-" + UUID.randomUUID().toString();
     }
 
     public static Score createScore(String reliability, String confidence) {
@@ -52,4 +52,15 @@ public class Utils {
             throw new IllegalArgumentException("Reliability must be a number in the range [0.0-1.0]");
         }
     }
+
+    public static Float scoreBoundFromString(String bound) {
+        if (bound == null || bound.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Float.valueOf(bound);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Score bounds must be numbers in the range [0.0-1.0], or empty");
+        }
+    }
 }
@@ -0,0 +1,115 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Score;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The entities changed by a transaction, published as a single chaincode event so that listeners can follow the
+ * ledger from block events instead of re-scanning it. A transaction keeps only the last event it sets, so the
+ * collector sets the event once, when it is flushed at the end of the transaction.
+ * <p>
+ * The event payload is a JSON object:
+ * <code>{"changes":[{"type":"SOURCE","id":"...","kind":"UPDATED","reliability":0.8,"confidence":0.6},...]}</code>
+ * The score is the entity's score after the transaction, and is omitted when the entity itself was not written.
+ * @see IzContext
+ */
+public final class ChangeEvents {
+
+    public static final String EVENT_NAME = "informiz.changes";
+
+    /**
+     * The kinds of change, from the most to the least significant
+     */
+    public enum Kind {
+        CREATED,
+        DELETED,
+        UPDATED,
+        REVIEWED
+    }
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final ChaincodeStub stub;
+
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+
+    /**
+     * @param stub the transaction's stub
+     */
+    public ChangeEvents(final ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    /**
+     * Record a change to an entity. An entity is listed once per transaction, with the most significant kind of change
+     * and the latest score recorded for it.
+     * @param type the entity's type
+     * @param id the entity's id
+     * @param kind the kind of change
+     * @param score the entity's new score, or null if the entity itself was not written
+     */
+    public void record(final ContractType type, final String id, final Kind kind, final Score score) {
+        Change change = changes.computeIfAbsent(type.name() + ":" + id, (key) -> new Change(type, id, kind));
+        if (kind.compareTo(change.kind) < 0) {
+            change.kind = kind;
+        }
+        if (score != null) {
+            change.score = score;
+        }
+    }
+
+    /**
+     * Publish the recorded changes, if any, as the transaction's event
+     */
+    public void flush() {
+        if (!changes.isEmpty()) {
+            stub.setEvent(EVENT_NAME, encode());
+            changes.clear();
+        }
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("changes");
+            for (Change change : changes.values()) {
+                generator.writeStartObject();
+                generator.writeStringField("type", change.type.name());
+                generator.writeStringField("id", change.id);
+                generator.writeStringField("kind", change.kind.name());
+                if (change.score != null) {
+                    generator.writeNumberField("reliability", change.score.getReliability());
+                    generator.writeNumberField("confidence", change.score.getConfidence());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (Exception e) {
+            throw new ChaincodeException("Failed to write the change event", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Change {
+        private final ContractType type;
+        private final String id;
+        private Kind kind;
+        private Score score;
+
+        private Change(final ContractType type, final String id, final Kind kind) {
+            this.type = type;
+            this.id = id;
+            this.kind = kind;
+        }
+    }
+}
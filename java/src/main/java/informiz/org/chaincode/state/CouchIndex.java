@@ -0,0 +1,57 @@
+package informiz.org.chaincode.state;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The CouchDB indexes packaged with the chaincode, under <code>META-INF/statedb/couchdb/indexes</code>.
+ * Every index is on the record's <code>docType</code> followed by the index's fields.
+ */
+public enum CouchIndex {
+    RELIABILITY("indexReliability", "score.reliability"),
+    CONFIDENCE("indexConfidence", "score.confidence"),
+    LOCALE("indexLocale", "locale"),
+    SOURCE("indexSource", "sid"),
+    SOURCE_LOCALE("indexSourceLocale", "sid", "locale"),
+    ACTIVE("indexActive", "active");
+
+    private final String name;
+
+    private final Set<String> fields;
+
+    CouchIndex(final String name, final String... fields) {
+        this.name = name;
+        this.fields = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(fields)));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDesignDocument() {
+        return "_design/" + name + "Doc";
+    }
+
+    /**
+     * @return the indexed fields, other than the <code>docType</code>
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Find the index on exactly the given fields
+     * @param fields the fields of a query's selector, other than the <code>docType</code>
+     * @return the index, or null if there is none
+     */
+    public static CouchIndex forFields(final Set<String> fields) {
+        for (CouchIndex index : values()) {
+            if (index.fields.equals(fields)) {
+                return index;
+            }
+        }
+        return null;
+    }
+}
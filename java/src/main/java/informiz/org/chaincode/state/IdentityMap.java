@@ -0,0 +1,110 @@
+package informiz.org.chaincode.state;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The records read and written by a transaction, by key. A record is read and decoded at most once per transaction,
+ * and the transaction sees its own writes. Every changed record is encoded and written to the ledger exactly once,
+ * when the map is flushed.
+ * @see IzContext
+ */
+public final class IdentityMap {
+
+    private static final Object ABSENT = new Object();
+
+    private final ChaincodeStub stub;
+
+    private final StateCodec codec;
+
+    private final Map<String, Object> records = new HashMap<>();
+
+    private final Map<String, Object> dirty = new LinkedHashMap<>();
+
+    /**
+     * @param stub the transaction's stub
+     */
+    public IdentityMap(final ChaincodeStub stub) {
+        this.stub = stub;
+        this.codec = StateCodec.getDefault();
+    }
+
+    public ChaincodeStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Read a record, from the identity map if the transaction already read or wrote it
+     * @param key the record's key
+     * @param type the record's type
+     * @return the record, or null if there is no record with the given key
+     */
+    public <T> T get(final String key, final Class<T> type) {
+        Object record = records.get(key);
+        if (record == null) {
+            byte[] state = stub.getState(key);
+            record = ArrayUtils.isEmpty(state) ? ABSENT : decode(key, state, type);
+            records.put(key, record);
+        }
+        return record == ABSENT ? null : type.cast(record);
+    }
+
+    /**
+     * Read a copy of a record, e.g to decorate for a response, which does not change the record read or written by the
+     * transaction. The copy is decoded from the ledger, or from the transaction's version of the record if it already
+     * read or wrote it, and is not kept in the identity map.
+     * @param key the record's key
+     * @param type the record's type
+     * @return a copy of the record, or null if there is no record with the given key
+     */
+    public <T> T copy(final String key, final Class<T> type) {
+        Object record = records.get(key);
+        if (record == null) {
+            byte[] state = stub.getState(key);
+            return ArrayUtils.isEmpty(state) ? null : type.cast(decode(key, state, type));
+        }
+        return record == ABSENT ? null : type.cast(decode(key, encode(key, record), type));
+    }
+
+    /**
+     * Write a record. The record is written to the ledger when the map is flushed, in its state at that time.
+     * @param key the record's key
+     * @param record the record
+     */
+    public void put(final String key, final Object record) {
+        records.put(key, record);
+        dirty.put(key, record);
+    }
+
+    /**
+     * Write all the records written by the transaction to the ledger, each exactly once
+     */
+    public void flush() {
+        for (Map.Entry<String, Object> entry : dirty.entrySet()) {
+            stub.putState(entry.getKey(), encode(entry.getKey(), entry.getValue()));
+        }
+        dirty.clear();
+    }
+
+    private byte[] encode(final String key, final Object record) {
+        try {
+            return codec.encode(record);
+        } catch (IOException e) {
+            throw new ChaincodeException(String.format("Failed to serialize %s", key), e);
+        }
+    }
+
+    private Object decode(final String key, final byte[] state, final Class<?> type) {
+        try {
+            return codec.decode(state, type);
+        } catch (IOException e) {
+            throw new ChaincodeException(String.format("Failed to deserialize %s", key), e);
+        }
+    }
+}
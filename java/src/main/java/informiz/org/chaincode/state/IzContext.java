@@ -0,0 +1,77 @@
+package informiz.org.chaincode.state;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/**
+ * The transaction context of the informiz contracts, with an {@link IdentityMap} of the records read and written by
+ * the transaction, the {@link ChangeEvents} of the entities it changed and the {@link IdGenerator} of the entities it
+ * creates. Every record written by the transaction is encoded and written to the ledger exactly once, and its changes
+ * are published in a single event, when the transaction is done.
+ * <p>
+ * Contracts create the context in <code>createContext</code> and flush it in <code>afterTransaction</code>, and their
+ * transactions run only in the context they created.
+ */
+public final class IzContext extends Context {
+
+    private final IdentityMap records;
+
+    private final ChangeEvents events;
+
+    private final IdGenerator ids;
+
+    public IzContext(final ChaincodeStub stub) {
+        super(stub);
+        this.records = new IdentityMap(stub);
+        this.events = new ChangeEvents(stub);
+        this.ids = new IdGenerator(stub);
+    }
+
+    public IdentityMap getRecords() {
+        return records;
+    }
+
+    public ChangeEvents getEvents() {
+        return events;
+    }
+
+    public IdGenerator getIds() {
+        return ids;
+    }
+
+    /**
+     * @param ctx a transaction context
+     * @return the context, as an informiz context
+     * @throws IllegalStateException if the context was not created by an informiz contract
+     */
+    public static IzContext of(final Context ctx) {
+        if (!(ctx instanceof IzContext)) {
+            throw new IllegalStateException("Transactions must run in the context created by their contract");
+        }
+        return (IzContext) ctx;
+    }
+
+    /**
+     * @param ctx a transaction context, created by an informiz contract
+     * @return the records of the transaction
+     */
+    public static IdentityMap records(final Context ctx) {
+        return of(ctx).getRecords();
+    }
+
+    /**
+     * @param ctx a transaction context, created by an informiz contract
+     * @return the change events of the transaction
+     */
+    public static ChangeEvents events(final Context ctx) {
+        return of(ctx).getEvents();
+    }
+
+    /**
+     * @param ctx a transaction context, created by an informiz contract
+     * @return the id generator of the transaction
+     */
+    public static IdGenerator ids(final Context ctx) {
+        return of(ctx).getIds();
+    }
+}
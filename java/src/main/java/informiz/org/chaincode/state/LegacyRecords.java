@@ -0,0 +1,64 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.model.ContractType;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entities written before they were stored under type-namespaced keys. Such records are JSON stored under their
+ * plain id, which starts with the name of their type (e.g <code>HYPOTHESIS-...</code>), so the legacy records of a
+ * type are a range of plain keys, and they hold their reviews inline.
+ * No transaction reads legacy records: each contract's <code>migrateLegacy*</code> transaction moves them, a page at a
+ * time, to their namespaced keys, and moves their reviews to the {@link ReviewStore}.
+ */
+public final class LegacyRecords {
+
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private LegacyRecords() {}
+
+    /**
+     * Read and delete a page of the legacy records of a type
+     * @param stub a chaincode stub
+     * @param type the entities' type
+     * @param recordType the class of the entities
+     * @param pageSize the maximal number of records to take
+     * @return the records, in key order
+     */
+    public static <T> List<T> take(final ChaincodeStub stub, final ContractType type, final Class<T> recordType,
+                                   final int pageSize) {
+        List<T> taken = new ArrayList<>();
+        // plain ids are <type>-<uuid>, and '.' is the character right after '-'
+        try (QueryResultsIterator<KeyValue> states = stub.getStateByRange(type.name() + "-", type.name() + ".")) {
+            for (KeyValue keyval : states) {
+                if (taken.size() == pageSize) {
+                    break;
+                }
+                taken.add(codec.decode(keyval.getValue(), recordType));
+                stub.delState(keyval.getKey());
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(String.format("Failed to read legacy %s records", type), e);
+        }
+        return taken;
+    }
+
+    /**
+     * Move the reviews held by a legacy record to their own keys, leaving the record without reviews
+     * @param stub a chaincode stub
+     * @param type the entity's type
+     * @param id the entity's id
+     * @param reviews the reviews held by the record, as a map from fact-checker id to reliability
+     */
+    public static void moveReviews(final ChaincodeStub stub, final ContractType type, final String id,
+                                   final Map<String, Float> reviews) {
+        reviews.forEach((fcid, reliability) -> ReviewStore.putReview(stub, type, id, fcid, reliability));
+        reviews.clear();
+    }
+}
@@ -0,0 +1,106 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Writes a page of query results as a single JSON payload:
+ * <code>{"results":[record,...],"bookmark":"..."}</code>
+ * The records are embedded as JSON values, not as strings. JSON records are copied byte for byte, without being
+ * parsed or escaped, and binary records are transcoded straight into the payload.
+ */
+public final class PageWriter {
+
+    private static final byte[] RESULTS_START = "{\"results\":[".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] BOOKMARK_START = "],\"bookmark\":".getBytes(StandardCharsets.UTF_8);
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private PageWriter() {}
+
+    /**
+     * Write a page of query results, and close the results iterator
+     * @param states the page of query results
+     * @param codec the codec of the records
+     * @return the page, as a JSON string
+     */
+    public static String write(final QueryResultsIteratorWithMetadata<KeyValue> states, final StateCodec codec) {
+        return write(states, codec, KeyValue::getValue, Projection.ALL);
+    }
+
+    /**
+     * Write a page of query results with only the projected fields of each record, and close the results iterator
+     * @param states the page of query results
+     * @param codec the codec of the records
+     * @param projection the fields of the records to write
+     * @return the page, as a JSON string
+     */
+    public static String write(final QueryResultsIteratorWithMetadata<KeyValue> states, final StateCodec codec,
+                               final Projection projection) {
+        return write(states, codec, KeyValue::getValue, projection);
+    }
+
+    /**
+     * Write a page of query results, resolving each result to the record it points to, and close the results iterator
+     * @param states the page of query results, e.g entries of a {@link StateIndex}
+     * @param codec the codec of the records
+     * @param records resolves a query result to the encoded record to write, or to null to leave the result out
+     * @return the page, as a JSON string
+     */
+    public static String write(final QueryResultsIteratorWithMetadata<KeyValue> states, final StateCodec codec,
+                               final Function<KeyValue, byte[]> records) {
+        return write(states, codec, records, Projection.ALL);
+    }
+
+    /**
+     * Write a page of query results, resolving each result to the record it points to, with only the projected fields
+     * of each record, and close the results iterator
+     * @param states the page of query results, e.g entries of a {@link StateIndex}
+     * @param codec the codec of the records
+     * @param records resolves a query result to the encoded record to write, or to null to leave the result out
+     * @param projection the fields of the records to write
+     * @return the page, as a JSON string
+     */
+    public static String write(final QueryResultsIteratorWithMetadata<KeyValue> states, final StateCodec codec,
+                               final Function<KeyValue, byte[]> records, final Projection projection) {
+        ByteArrayBuilder out = new ByteArrayBuilder(INITIAL_BUFFER_SIZE);
+        try (QueryResultsIteratorWithMetadata<KeyValue> results = states) {
+            ChaincodeShim.QueryResponseMetadata metadata = results.getMetadata();
+
+            out.write(RESULTS_START);
+            if (metadata.getFetchedRecordsCount() > 0) {
+                boolean first = true;
+                for (KeyValue keyval : results) {
+                    byte[] record = records.apply(keyval);
+                    if (record == null) {
+                        continue;
+                    }
+                    if (!first) {
+                        out.write(',');
+                    }
+                    projection.write(record, codec, out);
+                    first = false;
+                }
+            }
+            out.write(BOOKMARK_START);
+            try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+                generator.writeString(metadata.getBookmark());
+            }
+            out.write('}');
+        } catch (Exception e) {
+            throw new ChaincodeException("Failed to write query results", e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The top-level fields of the records to return from a listing transaction, given as a JSON array of field names,
+ * e.g <code>["tid","score"]</code>. An empty projection returns whole records.
+ * Only the projected fields are copied into the page; the values of all other fields are skipped while streaming the
+ * record, and are never decoded.
+ */
+public final class Projection {
+
+    /** The projection of whole records */
+    public static final Projection ALL = new Projection(Collections.emptySet());
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final Set<String> fields;
+
+    private Projection(final Set<String> fields) {
+        this.fields = Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * @param fields a JSON array of field names, or an empty string for whole records
+     * @return the projection
+     * @throws IllegalArgumentException if the fields are not a JSON array of non-blank field names
+     */
+    public static Projection parse(final String fields) {
+        if (StringUtils.isBlank(fields)) {
+            return ALL;
+        }
+        JsonNode array;
+        try {
+            array = mapper.readTree(fields);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Fields must be a JSON array of field names", e);
+        }
+        if (array == null || !array.isArray()) {
+            throw new IllegalArgumentException("Fields must be a JSON array of field names");
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (JsonNode name : array) {
+            if (!name.isTextual() || StringUtils.isBlank(name.asText())) {
+                throw new IllegalArgumentException("Field names must be non-blank strings");
+            }
+            names.add(name.asText());
+        }
+        return names.isEmpty() ? ALL : new Projection(names);
+    }
+
+    /**
+     * @return true if this projection returns whole records
+     */
+    public boolean isAll() {
+        return fields.isEmpty();
+    }
+
+    /**
+     * @return the projected fields, or an empty set for whole records
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Write the projection of a record as JSON
+     * @param state the encoded record
+     * @param codec the codec of the record
+     * @param out the stream to write the record to
+     * @throws IOException if the record is malformed or of an unknown format version
+     */
+    public void write(final byte[] state, final StateCodec codec, final OutputStream out) throws IOException {
+        if (isAll()) {
+            codec.copyAsJson(state, out);
+        } else {
+            codec.copyFieldsAsJson(state, fields, out);
+        }
+    }
+}
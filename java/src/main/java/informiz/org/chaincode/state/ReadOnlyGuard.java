@@ -0,0 +1,81 @@
+package informiz.org.chaincode.state;
+
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the read-only transactions of a contract read-only.
+ * Transactions declared with an <code>EVALUATE</code> intent get a stub that fails fast on any call to the write API
+ * (state, private-data, validation parameters and events), instead of silently producing a write-set.
+ */
+public final class ReadOnlyGuard {
+
+    private static final Set<String> WRITE_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "putState", "putStringState", "delState",
+            "putPrivateData", "delPrivateData",
+            "setStateValidationParameter", "setPrivateDataValidationParameter",
+            "setEvent")));
+
+    private final Set<String> readOnlyTransactions = new HashSet<>();
+
+    /**
+     * @param contract a contract class, its <code>EVALUATE</code> transactions are considered read-only
+     */
+    public ReadOnlyGuard(final Class<? extends ContractInterface> contract) {
+        for (Method method : contract.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null && transaction.intent() == Transaction.TYPE.EVALUATE) {
+                readOnlyTransactions.add(transaction.name().isEmpty() ? method.getName() : transaction.name());
+            }
+        }
+    }
+
+    /**
+     * @param function the invoked function, with or without the contract-name prefix
+     * @return true if the function is a read-only transaction of the contract
+     */
+    public boolean isReadOnly(final String function) {
+        if (function == null) {
+            return false;
+        }
+        return readOnlyTransactions.contains(function.substring(function.lastIndexOf(':') + 1));
+    }
+
+    /**
+     * Guard a stub according to the invoked function
+     * @param stub the transaction's stub
+     * @return a read-only view of the stub if the invoked function is read-only, otherwise the stub itself
+     */
+    public ChaincodeStub guard(final ChaincodeStub stub) {
+        return isReadOnly(stub.getFunction()) ? readOnly(stub) : stub;
+    }
+
+    /**
+     * @param stub a chaincode stub
+     * @return a view of the stub that throws a {@link ChaincodeException} on any call to the write API
+     */
+    public static ChaincodeStub readOnly(final ChaincodeStub stub) {
+        return (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+                new Class<?>[] { ChaincodeStub.class }, (proxy, method, args) -> {
+                    if (WRITE_METHODS.contains(method.getName())) {
+                        throw new ChaincodeException(String.format("%s is not allowed in read-only transaction %s",
+                                method.getName(), stub.getFunction()));
+                    }
+                    try {
+                        return method.invoke(stub, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,276 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Score;
+import org.apache.commons.lang3.ArrayUtils;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ledger access for fact-checkers' reviews of hypothesis, reference-texts and sources.
+ * Each review is stored under its own key (<code>REVIEW~entityId~fcid</code>) and the reviewed entity is never written,
+ * so concurrent reviews of the same entity never invalidate each other with an MVCC read conflict.
+ * The reviews of an entity are gathered with a partial composite-key scan.
+ * <p>
+ * Every change to a review also records the O(1) change it makes to the entity's {@link ReviewStatistics}, under a
+ * key of its own (<code>REVIEW_STATS~entityId~txId~fcid</code>). Reads of an entity and of its score merge the pending
+ * changes into its stored statistics and derive the current score from them, and every write of the entity folds
+ * them into its record. Queries that page through stored records - the score indexes, rich queries and the score
+ * history - report the stored score, which catches up with the reviews on the entity's next write or refresh.
+ * <p>
+ * The entities reviewed by each fact-checker are indexed in {@link StateIndex#FACT_CHECKER_REVIEWS}, which is kept in
+ * step with the reviews.
+ */
+public final class ReviewStore {
+
+    private static StateCodec codec = StateCodec.getDefault();
+
+    private static StateCodec json = new StateCodec(StateCodec.Format.JSON);
+
+    private static final String SCORE = "score";
+
+    private static final String STATISTICS = "statistics";
+
+    private ReviewStore() {}
+
+    /**
+     * Check that a reviewed entity exists, without decoding its record
+     * @param stub a chaincode stub
+     * @param entityType the entity's type
+     * @param entityId the entity's id
+     * @return true if the entity is on the ledger
+     */
+    public static boolean exists(final ChaincodeStub stub, final ContractType entityType, final String entityId) {
+        return ArrayUtils.isNotEmpty(stub.getState(StateKeys.entityKey(entityType, entityId)));
+    }
+
+    /**
+     * Add or update a fact-checker's review of an entity
+     * @param stub a chaincode stub
+     * @param entityType the reviewed entity's type
+     * @param entityId the reviewed entity's id
+     * @param fcid the fact-checker's id
+     * @param reliability the reliability given by the fact-checker
+     * @return the stored review
+     */
+    public static Review putReview(final ChaincodeStub stub, final ContractType entityType, final String entityId,
+                                   final String fcid, final float reliability) {
+        String key = StateKeys.reviewKey(entityId, fcid);
+        Float previous = decode(stub.getState(key), Float.class);
+
+        stub.putState(key, encode(reliability));
+        if (previous == null) {
+            StateIndex.FACT_CHECKER_REVIEWS.put(stub, fcid, entityType.name(), entityId);
+        }
+        putStatisticsChange(stub, entityId, fcid, ReviewStatistics.change(previous, reliability));
+        return Review.createReview(entityType, entityId, fcid, reliability);
+    }
+
+    /**
+     * Remove a fact-checker's review of an entity
+     * @param stub a chaincode stub
+     * @param entityType the reviewed entity's type
+     * @param entityId the reviewed entity's id
+     * @param fcid the fact-checker's id
+     * @return the removed review, or null if the fact-checker did not review the entity
+     */
+    public static Review removeReview(final ChaincodeStub stub, final ContractType entityType, final String entityId,
+                                      final String fcid) {
+        String key = StateKeys.reviewKey(entityId, fcid);
+        Float previous = decode(stub.getState(key), Float.class);
+
+        if (previous == null) {
+            return null;
+        }
+        stub.delState(key);
+        StateIndex.FACT_CHECKER_REVIEWS.delete(stub, fcid, entityType.name(), entityId);
+        putStatisticsChange(stub, entityId, fcid, ReviewStatistics.change(previous, null));
+        return Review.createReview(entityType, entityId, fcid, previous);
+    }
+
+    /**
+     * Add or update a batch of a fact-checker's reviews, of entities of any type.
+     * Each review costs one read and one write of its own record plus its statistics change, and no entity is read or
+     * written: the caller checks that the reviewed entities exist. When the batch holds several reviews of the same
+     * entity, the last one wins.
+     * @param stub a chaincode stub
+     * @param fcid the fact-checker's id
+     * @param reviews the reviews, all by the fact-checker
+     * @return the stored reviews, in the order of the batch
+     */
+    public static List<Review> putReviews(final ChaincodeStub stub, final String fcid, final List<Review> reviews) {
+        Map<String, Review> latest = new LinkedHashMap<>();
+        for (Review review : reviews) {
+            latest.put(StateKeys.reviewKey(review.getEntityId(), fcid), review);
+        }
+        for (Review review : latest.values()) {
+            putReview(stub, ContractType.valueOf(review.getEntityType()), review.getEntityId(), fcid,
+                    review.getReliability());
+        }
+        List<Review> stored = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            stored.add(latest.get(StateKeys.reviewKey(review.getEntityId(), fcid)));
+        }
+        return stored;
+    }
+
+    /**
+     * Returns the reviews of a fact-checker, in pages
+     * @param stub a chaincode stub
+     * @param fcid the fact-checker's id
+     * @param pageSize the page size
+     * @param bookmark the bookmark of the page, empty for the first page
+     * @return a page of reviews, in json format, ordered by entity type and id. Index entries without a review record
+     * are left out, so a page may hold fewer reviews than the page size.
+     */
+    public static String getReviewsByFactChecker(final ChaincodeStub stub, final String fcid, final int pageSize,
+                                                 final String bookmark) {
+        QueryResultsIteratorWithMetadata<KeyValue> entries =
+                StateIndex.FACT_CHECKER_REVIEWS.page(stub, pageSize, bookmark, fcid);
+
+        return PageWriter.write(entries, json, (entry) -> {
+            List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+            ContractType entityType = ContractType.valueOf(attributes.get(1));
+            String entityId = attributes.get(2);
+            Float reliability = decode(stub.getState(StateKeys.reviewKey(entityId, fcid)), Float.class);
+            if (reliability == null) {
+                return null;
+            }
+            try {
+                return json.encode(Review.createReview(entityType, entityId, fcid, reliability));
+            } catch (IOException e) {
+                throw new ChaincodeException("Failed to serialize review info", e);
+            }
+        });
+    }
+
+    /**
+     * Gather all the reviews of an entity
+     * @param stub a chaincode stub
+     * @param entityId the reviewed entity's id
+     * @return the reviews of the entity, as a map from fact-checker id to reliability
+     */
+    public static Map<String, Float> getReviews(final ChaincodeStub stub, final String entityId) {
+        Map<String, Float> reviews = new HashMap<>();
+        try (QueryResultsIterator<KeyValue> states =
+                     stub.getStateByPartialCompositeKey(StateKeys.reviewPrefix(entityId))) {
+            for (KeyValue keyval : states) {
+                String fcid = CompositeKey.parseCompositeKey(keyval.getKey()).getAttributes().get(1);
+                reviews.put(fcid, codec.decode(keyval.getValue(), Float.class));
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(String.format("Failed to read the reviews of %s", entityId), e);
+        }
+        return reviews;
+    }
+
+    /**
+     * Read the current score of a reviewed entity, without reading its reviews or binding the rest of its record.
+     * When the reviews of the entity changed since it was last written, the score is derived from its stored
+     * statistics and the pending changes.
+     * @param stub a chaincode stub
+     * @param entityType the entity's type
+     * @param entityId the entity's id
+     * @return the entity's current score, or null if there is no such entity
+     */
+    public static Score getScore(final ChaincodeStub stub, final ContractType entityType, final String entityId) {
+        byte[] state = stub.getState(StateKeys.entityKey(entityType, entityId));
+        if (ArrayUtils.isEmpty(state)) {
+            return null;
+        }
+        Map<String, Class<?>> types = new HashMap<>();
+        types.put(SCORE, Score.class);
+        types.put(STATISTICS, ReviewStatistics.class);
+        Map<String, Object> fields;
+        try {
+            fields = codec.decodeFields(state, types);
+        } catch (IOException e) {
+            throw new ChaincodeException(String.format("Failed to deserialize the score of %s", entityId), e);
+        }
+        Score score = (Score) fields.get(SCORE);
+        ReviewStatistics pending = getPendingStatistics(stub, entityId);
+        if (pending == null) {
+            return score;
+        }
+        ReviewStatistics statistics = (ReviewStatistics) fields.get(STATISTICS);
+        if (statistics != null) {
+            pending.merge(statistics);
+        }
+        Score derived = pending.toScore();
+        return derived == null ? score : derived;
+    }
+
+    /**
+     * Sum up the review-statistics changes of an entity that were not folded into it yet, leaving them in place
+     * @param stub a chaincode stub
+     * @param entityId the reviewed entity's id
+     * @return the pending change in the entity's review statistics, or null if there is none
+     */
+    public static ReviewStatistics getPendingStatistics(final ChaincodeStub stub, final String entityId) {
+        return sumPendingStatistics(stub, entityId, false);
+    }
+
+    /**
+     * Sum up and delete the review-statistics changes of an entity, to be folded into the entity
+     * @param stub a chaincode stub
+     * @param entityId the reviewed entity's id
+     * @return the pending change in the entity's review statistics, or null if there is none
+     */
+    public static ReviewStatistics foldPendingStatistics(final ChaincodeStub stub, final String entityId) {
+        return sumPendingStatistics(stub, entityId, true);
+    }
+
+    private static ReviewStatistics sumPendingStatistics(final ChaincodeStub stub, final String entityId,
+                                                         final boolean delete) {
+        ReviewStatistics pending = null;
+        try (QueryResultsIterator<KeyValue> states =
+                     stub.getStateByPartialCompositeKey(StateKeys.statisticsPrefix(entityId))) {
+            for (KeyValue keyval : states) {
+                if (pending == null) {
+                    pending = new ReviewStatistics();
+                }
+                pending.merge(codec.decode(keyval.getValue(), ReviewStatistics.class));
+                if (delete) {
+                    stub.delState(keyval.getKey());
+                }
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(String.format("Failed to read the review statistics of %s", entityId), e);
+        }
+        return pending;
+    }
+
+    private static void putStatisticsChange(final ChaincodeStub stub, final String entityId, final String fcid,
+                                            final ReviewStatistics delta) {
+        stub.putState(StateKeys.statisticsKey(entityId, stub.getTxId(), fcid), encode(delta));
+    }
+
+    private static byte[] encode(final Object value) {
+        try {
+            return codec.encode(value);
+        } catch (IOException e) {
+            throw new ChaincodeException("Failed to serialize review info", e);
+        }
+    }
+
+    private static <T> T decode(final byte[] state, final Class<T> type) {
+        try {
+            return codec.decode(state, type);
+        } catch (IOException e) {
+            throw new ChaincodeException("Failed to deserialize review info", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import informiz.org.chaincode.model.ContractType;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A CouchDB rich query over the records of one entity type.
+ * A query is only executed when one of the packaged {@link CouchIndex indexes} covers exactly the fields of its
+ * selector, and it names that index explicitly, so a query never falls back to a scan of the whole state database.
+ * Rich queries read the records' JSON, so they require the chaincode to write records in the JSON state format.
+ */
+public final class RichQuery {
+
+    public static final String DOC_TYPE = "docType";
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectNode selector = mapper.createObjectNode();
+
+    private final Set<String> fields = new HashSet<>();
+
+    private Projection projection = Projection.ALL;
+
+    private RichQuery(final ContractType contractType) {
+        selector.put(DOC_TYPE, contractType.name());
+    }
+
+    /**
+     * Start a query over the records of an entity type
+     * @param contractType the type of records to select
+     * @return the query
+     */
+    public static RichQuery select(final ContractType contractType) {
+        return new RichQuery(contractType);
+    }
+
+    public RichQuery equalTo(final String field, final String value) {
+        fields.add(field);
+        selector.put(field, value);
+        return this;
+    }
+
+    public RichQuery equalTo(final String field, final boolean value) {
+        fields.add(field);
+        selector.put(field, value);
+        return this;
+    }
+
+    public RichQuery greaterThan(final String field, final float value) {
+        fields.add(field);
+        selector.putObject(field).put("$gt", value);
+        return this;
+    }
+
+    /**
+     * Return only some fields of the selected records. The projection is passed on to CouchDB, so the other fields
+     * are not even sent to the peer.
+     * @param projection the fields to return
+     * @return the query
+     */
+    public RichQuery project(final Projection projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    /**
+     * @return the index used by the query
+     * @throws ChaincodeException if no index covers the query
+     */
+    public CouchIndex getIndex() {
+        CouchIndex index = CouchIndex.forFields(fields);
+        if (index == null) {
+            throw new ChaincodeException(String.format("No index covers a query on %s", fields));
+        }
+        return index;
+    }
+
+    /**
+     * @return the query, in CouchDB's JSON query syntax
+     * @throws ChaincodeException if no index covers the query
+     */
+    public String toJson() {
+        CouchIndex index = getIndex();
+        ObjectNode query = mapper.createObjectNode();
+        query.set("selector", selector);
+        if (!projection.isAll()) {
+            ArrayNode projected = query.putArray("fields");
+            projection.getFields().forEach(projected::add);
+        }
+        query.putArray("use_index").add(index.getDesignDocument()).add(index.getName());
+        try {
+            return mapper.writeValueAsString(query);
+        } catch (JsonProcessingException e) {
+            throw new ChaincodeException("Failed to serialize query", e);
+        }
+    }
+
+    /**
+     * Execute the query
+     * @param stub a chaincode stub
+     * @param codec the codec of the records
+     * @param pageSize the page size
+     * @param bookmark the bookmark of the page, or an empty string for the first page
+     * @return a page of the selected records, as written by {@link PageWriter}
+     * @throws ChaincodeException if no index covers the query, or if records are not written as JSON
+     */
+    public String execute(final ChaincodeStub stub, final StateCodec codec, final int pageSize,
+                          final String bookmark) {
+        if (codec.getFormat() != StateCodec.Format.JSON) {
+            throw new ChaincodeException(String.format("Rich queries require the JSON state format (set %s=%s)",
+                    StateCodec.FORMAT_VARIABLE, StateCodec.Format.JSON));
+        }
+        return PageWriter.write(stub.getQueryResultWithPagination(toJson(), pageSize, bookmark), codec,
+                projection);
+    }
+}
@@ -0,0 +1,124 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import informiz.org.chaincode.model.Score;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The timeline of an entity's score, read from the history of its record.
+ * Only the <code>score</code> field of each historic value is decoded, and the timeline is downsampled to at most a
+ * given number of equal-width time buckets. Each bucket holds the last score of its time span, i.e the score in effect
+ * at the end of the span, so the timeline never shows a score the entity did not have.
+ * <p>
+ * The timeline is written as <code>{"points":[{"time":epochMillis,"reliability":0.8,"confidence":0.6},...]}</code>,
+ * oldest first.
+ */
+public final class ScoreHistory {
+
+    /** The maximal number of points in a timeline */
+    public static final int MAX_POINTS = 1000;
+
+    private static final String SCORE = "score";
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private ScoreHistory() {}
+
+    /**
+     * A score at a point in time
+     */
+    static final class Point {
+
+        final long time;
+
+        final Score score;
+
+        Point(final long time, final Score score) {
+            this.time = time;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Read the score timeline of an entity
+     * @param stub the transaction's stub
+     * @param key the ledger key of the entity
+     * @param codec the codec of the records
+     * @param maxPoints the maximal number of points, clamped to the range [1 - {@link #MAX_POINTS}]
+     * @return the timeline, as JSON
+     */
+    public static String query(final ChaincodeStub stub, final String key, final StateCodec codec,
+                               final int maxPoints) {
+        List<Point> points = new ArrayList<>();
+        try (QueryResultsIterator<KeyModification> history = stub.getHistoryForKey(key)) {
+            for (KeyModification modification : history) {
+                if (modification.isDeleted()) {
+                    continue;
+                }
+                Score score = codec.decodeField(modification.getValue(), SCORE, Score.class);
+                if (score != null) {
+                    points.add(new Point(modification.getTimestamp().toEpochMilli(), score));
+                }
+            }
+        } catch (Exception e) {
+            throw new ChaincodeException(String.format("Failed to read the score history of %s", key), e);
+        }
+        // the order of the history depends on the peer's version
+        points.sort(Comparator.comparingLong(point -> point.time));
+        return write(downsample(points, Math.max(1, Math.min(MAX_POINTS, maxPoints))));
+    }
+
+    /**
+     * @param points the points of a timeline, oldest first
+     * @param maxPoints the maximal number of points
+     * @return the last point of each of up to maxPoints equal-width time buckets, oldest first
+     */
+    static List<Point> downsample(final List<Point> points, final int maxPoints) {
+        if (points.size() <= maxPoints) {
+            return points;
+        }
+        long start = points.get(0).time;
+        long span = points.get(points.size() - 1).time - start + 1;
+        List<Point> sampled = new ArrayList<>(maxPoints);
+        long bucket = -1;
+        for (Point point : points) {
+            long pointBucket = (point.time - start) * maxPoints / span;
+            if (pointBucket == bucket) {
+                sampled.set(sampled.size() - 1, point);
+            } else {
+                sampled.add(point);
+                bucket = pointBucket;
+            }
+        }
+        return sampled;
+    }
+
+    private static String write(final List<Point> points) {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("points");
+            for (Point point : points) {
+                generator.writeStartObject();
+                generator.writeNumberField("time", point.time);
+                generator.writeNumberField("reliability", point.score.getReliability());
+                generator.writeNumberField("confidence", point.score.getConfidence());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (Exception e) {
+            throw new ChaincodeException("Failed to write the score history", e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,171 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Score;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * An index of entities ordered by a component of their score, e.g <code>SCORE:RELIABILITY:SOURCE:7fffffff:sid</code>.
+ * The score is encoded as 8 hex digits that sort in descending score order, so a range scan returns the highest
+ * scores first: the first page of the whole range is the top-K, and a score range is a bounded range scan, which works
+ * on any state database.
+ * <p>
+ * Composite keys cannot be range-scanned by value, so the index uses plain keys. The index follows the score stored
+ * with each entity, and moves whenever that score changes. Reviews move an entity on its next write, which folds them
+ * into the stored score, or once its score is refreshed from them.
+ */
+public final class ScoreIndex {
+
+    /** Entities ordered by reliability */
+    public static final ScoreIndex RELIABILITY = new ScoreIndex("RELIABILITY", Score::getReliability);
+
+    /** Entities ordered by confidence */
+    public static final ScoreIndex CONFIDENCE = new ScoreIndex("CONFIDENCE", Score::getConfidence);
+
+    private static final List<ScoreIndex> ALL =
+            Collections.unmodifiableList(Arrays.asList(RELIABILITY, CONFIDENCE));
+
+    private static final String PREFIX = "SCORE";
+
+    private static final char SEPARATOR = ':';
+
+    /** Sorts after the separator, bounding the entries of a single encoded value */
+    private static final char AFTER_VALUE = ';';
+
+    /** Sorts after any encoded value, bounding the entries of an entity type */
+    private static final char AFTER_TYPE = '~';
+
+    /** A non-empty value for index entries, an empty value would delete the entry */
+    private static final byte[] PRESENT = {0x00};
+
+    private final String name;
+
+    private final Function<Score, Float> component;
+
+    private ScoreIndex(final String name, final Function<Score, Float> component) {
+        this.name = name;
+        this.component = component;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name the name of an index, e.g 'reliability'
+     * @return the index
+     * @throws IllegalArgumentException if there is no such index
+     */
+    public static ScoreIndex forName(final String name) {
+        for (ScoreIndex index : ALL) {
+            if (index.name.equalsIgnoreCase(name)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("Score order must be either 'reliability' or 'confidence'");
+    }
+
+    /**
+     * @param type the entity type
+     * @param id the entity id
+     * @param score the entity's score
+     * @return the keys of the entity's entries in all the score indexes, none if it has no score
+     */
+    public static List<String> keys(final ContractType type, final String id, final Score score) {
+        List<String> keys = new ArrayList<>(ALL.size());
+        if (score == null) {
+            return keys;
+        }
+        for (ScoreIndex index : ALL) {
+            Float value = index.component.apply(score);
+            if (value != null) {
+                keys.add(index.prefix(type) + encode(value) + SEPARATOR + id);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Add an entity to all the score indexes
+     * @param stub the transaction's stub
+     * @param type the entity type
+     * @param id the entity id
+     * @param score the entity's score
+     */
+    public static void put(final ChaincodeStub stub, final ContractType type, final String id, final Score score) {
+        move(stub, Collections.emptyList(), keys(type, id, score));
+    }
+
+    /**
+     * Move an entity's entries after its score changed, writing only the entries that changed
+     * @param stub the transaction's stub
+     * @param previous the keys of the entity's entries before the change
+     * @param current the keys of the entity's entries after the change
+     * @see #keys(ContractType, String, Score)
+     */
+    public static void move(final ChaincodeStub stub, final List<String> previous, final List<String> current) {
+        Set<String> unchanged = new HashSet<>(previous);
+        unchanged.retainAll(current);
+        for (String key : previous) {
+            if (!unchanged.contains(key)) {
+                stub.delState(key);
+            }
+        }
+        for (String key : current) {
+            if (!unchanged.contains(key)) {
+                stub.putState(key, PRESENT);
+            }
+        }
+    }
+
+    /**
+     * Look up a page of entities within a score range, highest score first
+     * @param stub the transaction's stub
+     * @param type the entity type
+     * @param min the minimal score (inclusive), or null for no lower bound
+     * @param max the maximal score (exclusive), or null for no upper bound
+     * @param pageSize the page size
+     * @param bookmark the bookmark of the page, or an empty string for the first page
+     * @return the page of index entries
+     */
+    public QueryResultsIteratorWithMetadata<KeyValue> range(final ChaincodeStub stub, final ContractType type,
+                                                            final Float min, final Float max, final int pageSize,
+                                                            final String bookmark) {
+        String prefix = prefix(type);
+        String start = (max == null) ? prefix : prefix + encode(max) + AFTER_VALUE;
+        String end = (min == null) ? prefix + AFTER_TYPE : prefix + encode(min) + AFTER_VALUE;
+        return stub.getStateByRangeWithPagination(start, end, pageSize, bookmark);
+    }
+
+    /**
+     * @param entry an entry of a score index
+     * @return the id of the indexed entity
+     */
+    public static String id(final KeyValue entry) {
+        // SCORE:name:type:value:id, where only the id may contain a separator
+        return entry.getKey().split(String.valueOf(SEPARATOR), 5)[4];
+    }
+
+    private String prefix(final ContractType type) {
+        return PREFIX + SEPARATOR + name + SEPARATOR + type.name() + SEPARATOR;
+    }
+
+    /**
+     * Scores are in the range [0.0 - 1.0], where the bits of a float grow with its value, so the complement of the
+     * bits sorts in descending score order.
+     */
+    static String encode(final float value) {
+        float clamped = Float.isNaN(value) ? 0.0f : Math.max(0.0f, Math.min(1.0f, value));
+        return String.format("%08x", Integer.MAX_VALUE - Float.floatToIntBits(clamped));
+    }
+}
@@ -0,0 +1,293 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoding of records in the world state.
+ * A record is either plain JSON, or a one-byte format version followed by the encoded record. JSON records carry no
+ * header, which keeps them readable by CouchDB rich queries and lets records written as JSON strings be read as-is.
+ * Version bytes are in the range 0x01-0x08, which never starts a JSON text.
+ * <p>
+ * The format of written records is set with the <code>IZ_STATE_FORMAT</code> environment variable of the chaincode
+ * (<code>JSON</code> or <code>CBOR</code>, defaults to <code>JSON</code>). Records of any format are always readable.
+ * Any other value fails the chaincode's start with an error naming the variable and the supported formats.
+ * CBOR records are smaller and faster to encode, but CouchDB cannot select them, so rich queries require
+ * <code>JSON</code>; use <code>CBOR</code> only with a LevelDB state database.
+ * <p>
+ * Readers and writers are built once per record type and shared, and each thread reuses its own output buffer, so
+ * encoding and decoding a record costs little beyond the record's bytes.
+ */
+public final class StateCodec {
+
+    public enum Format {
+        JSON,
+        CBOR
+    }
+
+    public static final String FORMAT_VARIABLE = "IZ_STATE_FORMAT";
+
+    /** Version header of records encoded as CBOR */
+    public static final byte CBOR_V1 = 0x01;
+
+    private static final byte MAX_VERSION = 0x08;
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private static final Mapping json = new Mapping(new ObjectMapper());
+
+    private static final Mapping cbor = new Mapping(new ObjectMapper(new CBORFactory()));
+
+    private static final ThreadLocal<ByteArrayBuilder> buffers =
+            ThreadLocal.withInitial(() -> new ByteArrayBuilder(INITIAL_BUFFER_SIZE));
+
+    private static final StateCodec DEFAULT = new StateCodec(formatFromEnvironment());
+
+    private final Format format;
+
+    public StateCodec(final Format format) {
+        this.format = format;
+    }
+
+    /**
+     * @return the codec configured for the chaincode
+     */
+    public static StateCodec getDefault() {
+        return DEFAULT;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Encode a record in the codec's format
+     * @param value the record
+     * @return the encoded record
+     * @throws IOException if the record cannot be serialized
+     */
+    public byte[] encode(final Object value) throws IOException {
+        if (format == Format.JSON) {
+            return json.writer(value.getClass()).writeValueAsBytes(value);
+        }
+        ByteArrayBuilder out = buffers.get();
+        try {
+            out.write(CBOR_V1);
+            cbor.writer(value.getClass()).writeValue(out, value);
+            return out.toByteArray();
+        } finally {
+            out.reset();
+        }
+    }
+
+    /**
+     * Decode a record of any supported format
+     * @param state the encoded record
+     * @param type the record's type
+     * @return the decoded record, or null if the state is empty
+     * @throws IOException if the record is malformed or of an unknown format version
+     */
+    public <T> T decode(final byte[] state, final Class<T> type) throws IOException {
+        if (ArrayUtils.isEmpty(state)) {
+            return null;
+        }
+        if (!hasHeader(state)) {
+            return json.reader(type).readValue(state);
+        }
+        checkVersion(state);
+        return cbor.reader(type).readValue(state, 1, state.length - 1);
+    }
+
+    /**
+     * Decode a single top-level field of a record of any supported format, without binding the rest of the record.
+     * @param state the encoded record
+     * @param field the name of the field
+     * @param type the field's type
+     * @return the field's value, or null if the state is empty or the record has no such field
+     * @throws IOException if the record is malformed or of an unknown format version
+     * @see #decodeFields(byte[], Map)
+     */
+    public <T> T decodeField(final byte[] state, final String field, final Class<T> type) throws IOException {
+        return type.cast(decodeFields(state, Collections.singletonMap(field, type)).get(field));
+    }
+
+    /**
+     * Decode some top-level fields of a record of any supported format, without binding the rest of the record.
+     * The record is streamed until all the fields are found, and the values of other fields are skipped without being
+     * decoded.
+     * @param state the encoded record
+     * @param fields the names of the fields and their types
+     * @return the values of the fields that were found, by name (empty if the state is empty)
+     * @throws IOException if the record is malformed or of an unknown format version
+     */
+    public Map<String, Object> decodeFields(final byte[] state, final Map<String, Class<?>> fields)
+            throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        if (ArrayUtils.isEmpty(state)) {
+            return values;
+        }
+        Mapping mapping = hasHeader(state) ? cbor : json;
+        try (JsonParser parser = createParser(state)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Record is not an object");
+            }
+            while (values.size() < fields.size() && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                Class<?> type = fields.get(name);
+                if (type == null) {
+                    parser.skipChildren();
+                } else {
+                    values.put(name, mapping.reader(type).readValue(parser));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Write a record of any supported format as JSON, without binding it to a model type.
+     * JSON records are copied as-is, binary records are transcoded token by token.
+     * @param state the encoded record
+     * @param out the stream to write the record to
+     * @throws IOException if the record is malformed or of an unknown format version
+     */
+    public void copyAsJson(final byte[] state, final OutputStream out) throws IOException {
+        if (ArrayUtils.isEmpty(state)) {
+            out.write(NULL);
+            return;
+        }
+        if (!hasHeader(state)) {
+            out.write(state);
+            return;
+        }
+        checkVersion(state);
+        try (JsonParser parser = cbor.factory().createParser(state, 1, state.length - 1);
+             JsonGenerator generator = json.factory().createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    /**
+     * Write some top-level fields of a record of any supported format as a JSON object, without binding the record to a
+     * model type. The values of other fields are skipped without being decoded.
+     * @param state the encoded record
+     * @param fields the names of the fields to write
+     * @param out the stream to write the fields to
+     * @throws IOException if the record is malformed or of an unknown format version
+     */
+    public void copyFieldsAsJson(final byte[] state, final Set<String> fields, final OutputStream out)
+            throws IOException {
+        if (ArrayUtils.isEmpty(state)) {
+            out.write(NULL);
+            return;
+        }
+        try (JsonParser parser = createParser(state);
+             JsonGenerator generator = json.factory().createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Record is not an object");
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (fields.contains(name)) {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * An object mapper of a data format, with its readers and writers per record type
+     */
+    private static final class Mapping {
+
+        private final ObjectMapper mapper;
+
+        private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+        private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+        Mapping(final ObjectMapper mapper) {
+            this.mapper = mapper;
+        }
+
+        ObjectReader reader(final Class<?> type) {
+            return readers.computeIfAbsent(type, mapper::readerFor);
+        }
+
+        ObjectWriter writer(final Class<?> type) {
+            return writers.computeIfAbsent(type, mapper::writerFor);
+        }
+
+        JsonFactory factory() {
+            return mapper.getFactory();
+        }
+    }
+
+    private static JsonParser createParser(final byte[] state) throws IOException {
+        if (!hasHeader(state)) {
+            return json.factory().createParser(state);
+        }
+        checkVersion(state);
+        return cbor.factory().createParser(state, 1, state.length - 1);
+    }
+
+    private static boolean hasHeader(final byte[] state) {
+        return state[0] >= 0 && state[0] <= MAX_VERSION;
+    }
+
+    private static void checkVersion(final byte[] state) throws IOException {
+        if (state[0] != CBOR_V1) {
+            throw new IOException(String.format("Unsupported state format version %d", state[0]));
+        }
+    }
+
+    private static Format formatFromEnvironment() {
+        return formatFromString(System.getenv(FORMAT_VARIABLE));
+    }
+
+    /**
+     * @param format the value of the format variable, or null if it is not set
+     * @return the format, JSON if the variable is not set or blank
+     * @throws IllegalArgumentException if the value is not the name of a format
+     */
+    static Format formatFromString(final String format) {
+        if (StringUtils.isBlank(format)) {
+            return Format.JSON;
+        }
+        try {
+            return Format.valueOf(format.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unsupported %s '%s', expected one of %s",
+                    FORMAT_VARIABLE, format, Arrays.toString(Format.values())), e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package informiz.org.chaincode.state;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.util.List;
+
+/**
+ * A secondary index kept on the ledger as composite keys, e.g <code>sid~tid</code> for the reference-texts of a source.
+ * Only the keys carry information, so looking up the entries of a prefix is a range scan over the index keys, which
+ * works on any state database. Entries are written in the same transaction as the records they index.
+ */
+public final class StateIndex {
+
+    /** The reference-texts of a source: <code>sid~tid</code> */
+    public static final StateIndex SOURCE_TEXTS = new StateIndex("sid~tid");
+
+    /** The entities reviewed by a fact-checker: <code>fcid~entityType~entityId</code> */
+    public static final StateIndex FACT_CHECKER_REVIEWS = new StateIndex("fcid~entityType~entityId");
+
+    /** The hypothesis citing a reference-text: <code>tid~hid</code> */
+    public static final StateIndex TEXT_HYPOTHESES = new StateIndex("tid~hid");
+
+    /** Entities by creation time, newest first: <code>type~createdAt~id</code>, see {@link StateKeys#newestFirst} */
+    public static final StateIndex RECENT = new StateIndex("type~createdAt~id");
+
+    /** A non-empty value for index entries, an empty value would delete the entry */
+    private static final byte[] PRESENT = {0x00};
+
+    private final String name;
+
+    private StateIndex(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param attributes the attributes of the entry, in the order of the index
+     * @return the ledger key of the index entry
+     */
+    public String key(final String... attributes) {
+        return new CompositeKey(name, attributes).toString();
+    }
+
+    /**
+     * Add an entry to the index
+     * @param stub the transaction's stub
+     * @param attributes the attributes of the entry, in the order of the index
+     */
+    public void put(final ChaincodeStub stub, final String... attributes) {
+        stub.putState(key(attributes), PRESENT);
+    }
+
+    /**
+     * Remove an entry from the index
+     * @param stub the transaction's stub
+     * @param attributes the attributes of the entry, in the order of the index
+     */
+    public void delete(final ChaincodeStub stub, final String... attributes) {
+        stub.delState(key(attributes));
+    }
+
+    /**
+     * A page of the entries of the index starting with the given attributes
+     * @param stub the transaction's stub
+     * @param pageSize the page size
+     * @param bookmark the bookmark of the page, empty for the first page
+     * @param prefix the leading attributes of the entries
+     * @return the entries, in key order
+     */
+    public QueryResultsIteratorWithMetadata<KeyValue> page(final ChaincodeStub stub, final int pageSize,
+                                                           final String bookmark, final String... prefix) {
+        return stub.getStateByPartialCompositeKeyWithPagination(new CompositeKey(name, prefix), pageSize, bookmark);
+    }
+
+    /**
+     * @param entry an entry of an index
+     * @return the last attribute of the entry, typically the id of the indexed record
+     */
+    public static String lastAttribute(final KeyValue entry) {
+        List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+        return attributes.get(attributes.size() - 1);
+    }
+}
@@ -0,0 +1,91 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.model.ContractType;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+
+import java.time.Instant;
+
+/**
+ * Ledger keys for the records managed by the informiz contracts.
+ * Every entity is stored under a composite key namespaced by its {@link ContractType}, so listing the entities of one
+ * type is a range scan over the records of that type only. Entities written under their plain ids, before keys were
+ * namespaced, are moved to their keys by the contracts' migration transactions (see {@link LegacyRecords}).
+ */
+public final class StateKeys {
+
+    private static final String REVIEW = "REVIEW";
+
+    private static final String REVIEW_STATISTICS = "REVIEW_STATS";
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private StateKeys() {}
+
+    /**
+     * The ledger key of an entity, equivalent to <code>stub.createCompositeKey(type, id)</code>
+     * @param type the entity's type
+     * @param id the entity's id
+     * @return the key under which the entity is stored on the ledger
+     */
+    public static String entityKey(final ContractType type, final String id) {
+        return new CompositeKey(type.name(), id).toString();
+    }
+
+    /**
+     * A partial composite-key matching all the entities of the given type
+     * @param type the entity type
+     * @return a partial key, for use with <code>getStateByPartialCompositeKey*</code>
+     */
+    public static CompositeKey entityPrefix(final ContractType type) {
+        return new CompositeKey(type.name());
+    }
+
+    /**
+     * The ledger key of a fact-checker's review of an entity
+     * @param entityId the reviewed entity's id
+     * @param fcid the fact-checker's id
+     * @return the key under which the review is stored on the ledger
+     */
+    public static String reviewKey(final String entityId, final String fcid) {
+        return new CompositeKey(REVIEW, entityId, fcid).toString();
+    }
+
+    /**
+     * A partial composite-key matching all the reviews of an entity
+     * @param entityId the reviewed entity's id
+     * @return a partial key, for use with <code>getStateByPartialCompositeKey*</code>
+     */
+    public static CompositeKey reviewPrefix(final String entityId) {
+        return new CompositeKey(REVIEW, entityId);
+    }
+
+    /**
+     * The ledger key of a change to the review statistics of an entity, made by a fact-checker in a transaction
+     * @param entityId the reviewed entity's id
+     * @param txId the id of the transaction making the change
+     * @param fcid the fact-checker's id
+     * @return the key under which the statistics delta is stored on the ledger
+     */
+    public static String statisticsKey(final String entityId, final String txId, final String fcid) {
+        return new CompositeKey(REVIEW_STATISTICS, entityId, txId, fcid).toString();
+    }
+
+    /**
+     * A partial composite-key matching all the pending review statistics changes of an entity
+     * @param entityId the reviewed entity's id
+     * @return a partial key, for use with <code>getStateByPartialCompositeKey*</code>
+     */
+    public static CompositeKey statisticsPrefix(final String entityId) {
+        return new CompositeKey(REVIEW_STATISTICS, entityId);
+    }
+
+    /**
+     * A fixed-width form of a time that sorts newest first, for ordering keys by time
+     * @param time a time, e.g a transaction's timestamp
+     * @return the time, as 16 hex digits
+     */
+    public static String newestFirst(final Instant time) {
+        long nanos = Math.max(0L, time.getEpochSecond() * NANOS_PER_SECOND + time.getNano());
+        return String.format("%016x", Long.MAX_VALUE - nanos);
+    }
+}
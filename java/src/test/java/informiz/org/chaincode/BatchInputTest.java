@@ -0,0 +1,77 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class BatchInputTest {
+
+    @Nested
+    class Parsing {
+
+        @Test
+        public void whenBatchIsValid() {
+            List<String> names = BatchInput.parse("[{\"name\": \"a\"}, {\"name\": \"b\", \"link\": null}]")
+                    .map((item) -> BatchInput.required(item, "name") + BatchInput.optional(item, "link"));
+            assertEquals(Arrays.asList("anull", "bnull"), names);
+        }
+
+        @Test
+        public void whenBatchIsNotAnArray() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> BatchInput.parse("{\"name\": \"a\"}"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> BatchInput.parse("not json"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> BatchInput.parse("[1, 2]"));
+        }
+
+        @Test
+        public void whenBatchIsEmpty() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> BatchInput.parse("[]"));
+        }
+
+        @Test
+        public void whenBatchIsTooLarge() {
+            String batch = "[" + String.join(",", Collections.nCopies(BatchInput.MAX_SIZE + 1, "{}")) + "]";
+            Assertions.assertThrows(IllegalArgumentException.class, () -> BatchInput.parse(batch));
+        }
+    }
+
+    @Nested
+    class Conversion {
+
+        @Test
+        public void whenFieldIsMissing() {
+            BatchInput batch = BatchInput.parse("[{\"name\": \"a\"}, {\"title\": \"b\"}]");
+            IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> batch.map((JsonNode item) -> BatchInput.required(item, "name")));
+            assertTrue(e.getMessage().startsWith("Batch item 1"));
+        }
+
+        @Test
+        public void whenFieldIsNotAString() {
+            for (String name : new String[] { "{\"first\": \"a\"}", "[\"a\"]", "42", "true", "\"  \"" }) {
+                BatchInput batch = BatchInput.parse("[{\"name\": \"a\"}, {\"name\": " + name + "}]");
+                IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                        () -> batch.map((JsonNode item) -> BatchInput.required(item, "name")));
+                assertTrue(e.getMessage().startsWith("Batch item 1"));
+            }
+            BatchInput batch = BatchInput.parse("[{\"link\": {\"url\": \"a\"}}]");
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> batch.map((JsonNode item) -> BatchInput.optional(item, "link")));
+        }
+    }
+
+    @Test
+    public void idsAreJson() {
+        assertEquals("[\"id-1\",\"id-2\"]", BatchInput.ids(Arrays.asList("id-1", "id-2")));
+    }
+}
@@ -1,58 +1,69 @@
 package informiz.org.chaincode;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import informiz.org.chaincode.model.ContractType;
-import informiz.org.chaincode.model.PaginatedResults;
 import informiz.org.chaincode.model.FactChecker;
-import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import mockit.*;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 public class FactCheckerContractTest {
 
-    @Mocked
-    Context ctx;
-
     @Mocked
     ChaincodeStub stub;
 
+    Context ctx;
+
     @Tested
     FactCheckerContract contract = new FactCheckerContract();
 
     static FactChecker factChecker = FactChecker.createFactChecker("Chuck Fact", 0.98f, 0.99f);
 
+    static String factCheckerKey = StateKeys.entityKey(ContractType.FACT_CHECKER, factChecker.getFcid());
+
     static String factCheckerJson;
 
+    static byte[] factCheckerState;
+
     @BeforeAll
-    private static void prepareTest() throws JsonProcessingException {
+    private static void prepareTest() throws IOException {
         factChecker.setEmail("chuck@informiz.org");
         factChecker.setLink("https://www.linkedin.com/in/chuckfact");
         ObjectMapper mapper = new ObjectMapper();
         factCheckerJson = mapper.writeValueAsString(factChecker);
-        // mock the creation of UUIDs to always return the test-fact-checker's id
-        new MockUp<Utils>() {
-            @Mock
-            public String createUuid(ContractType contractType) {
-                return factChecker.getFcid();
-            }
-        };
+        factCheckerState = StateCodec.getDefault().encode(factChecker);
+    }
+
+    @BeforeEach
+    public void createContext() {
+        new Expectations() { { stub.getCreator(); result = TestUtils.creator(); } };
+        ctx = contract.createContext(stub);
     }
 
     @Nested
@@ -64,36 +75,109 @@ public class FactCheckerContractTest {
          */
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
             FactChecker created = contract.createFactChecker(ctx, factChecker.getName(),
                     String.valueOf(factChecker.getScore().getReliability()),
                     String.valueOf(factChecker.getScore().getConfidence()),
                     factChecker.getEmail(),
                     factChecker.getLink());
-            assertTrue(factChecker.equals(created));
+            assertEquals(ContractType.FACT_CHECKER + "-tx1-0", created.getFcid()); // ids are generated from the transaction id
         }
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
             FactChecker created = contract.createFactChecker(ctx, factChecker.getName(),
                     String.valueOf(factChecker.getScore().getReliability()),
                     String.valueOf(factChecker.getScore().getConfidence()),
                     factChecker.getEmail(),
                     factChecker.getLink());
-            assertTrue(factChecker.equals(created)); // FactChecker's 'equals' method only considers fact-checker id
+            assertEquals(ContractType.FACT_CHECKER + "-tx1-0", created.getFcid()); // ids are generated from the transaction id
             assertTrue(factChecker.getScore().equals(created.getScore()));
             assertEquals(factChecker.getName(), created.getName());
         }
     }
 
+    @Nested
+    class InvokeCreateFactCheckerBatchTransaction {
+
+        @Test
+        public void publishesEveryCreatedFactChecker() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            contract.createFactCheckerBatch(ctx,
+                    "[{\"name\": \"Chuck Fact\", \"reliability\": \"0.9\", \"confidence\": \"0.8\"}," +
+                    " {\"name\": \"Fact Chuck\", \"reliability\": \"0.7\", \"confidence\": \"0.6\"}]");
+            contract.afterTransaction(ctx, null);
+
+            List<byte[]> payloads = new ArrayList<>();
+            new Verifications() { { stub.setEvent(ChangeEvents.EVENT_NAME, withCapture(payloads)); times = 1; } };
+            JsonNode changes = new ObjectMapper().readTree(payloads.get(0)).get("changes");
+            assertEquals(2, changes.size());
+            assertEquals(ContractType.FACT_CHECKER + "-tx1-0", changes.get(0).get("id").asText());
+            assertEquals(ContractType.FACT_CHECKER + "-tx1-1", changes.get(1).get("id").asText());
+            assertEquals("CREATED", changes.get(1).get("kind").asText());
+        }
+
+        @Test
+        public void whenBatchIsValid() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            String ids = contract.createFactCheckerBatch(ctx,
+                    "[{\"name\": \"Chuck Fact\", \"reliability\": \"0.9\", \"confidence\": \"0.8\", " +
+                    "\"email\": \"chuck@informiz.org\"}]");
+
+            assertEquals(ContractType.FACT_CHECKER + "-tx1-0", new ObjectMapper().readTree(ids).get(0).asText());
+        }
+
+        @Test
+        public void whenBatchIsTooLarge() {
+            String item = "{\"name\": \"Chuck Fact\", \"reliability\": \"0.9\", \"confidence\": \"0.8\"}";
+            String batch = "[" + String.join(",", Collections.nCopies(BatchInput.MAX_SIZE + 1, item)) + "]";
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.createFactCheckerBatch(ctx, batch));
+        }
+    }
+
+    @Nested
+    class InvokeGetFactCheckersTransaction {
+
+        @Test
+        public void whenSomeFactCheckersExist() throws IOException {
+            String missingKey = StateKeys.entityKey(ContractType.FACT_CHECKER, "no-such-fact-checker");
+            new Expectations() {
+                { stub.getState(factCheckerKey); result = factCheckerState; }
+                { stub.getState(missingKey); result = new byte[0]; }
+            };
+
+            JsonNode result = new ObjectMapper().readTree(contract.getFactCheckers(ctx,
+                    String.format("[\"%s\", \"no-such-fact-checker\"]", factChecker.getFcid())));
+            assertEquals(1, result.get("results").size());
+            assertEquals(factChecker.getFcid(), result.get("results").get(0).get("fcid").asText());
+            assertEquals("no-such-fact-checker", result.get("missing").get(0).asText());
+        }
+
+        @Test
+        public void whenIdsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.getFactCheckers(ctx, "[]"));
+        }
+    }
+
     @Nested
     class InvokeQueryFactCheckerTransaction {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
+
+            FactChecker found = contract.queryFactChecker(ctx, factChecker.getFcid());
+            assertTrue(factChecker.equals(found));
+
+            new Verifications() { { stub.putState(factCheckerKey, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenFactCheckerIsStoredAsJson() {
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerJson.getBytes(StandardCharsets.UTF_8); }};
 
             FactChecker found = contract.queryFactChecker(ctx, factChecker.getFcid());
             assertTrue(factChecker.equals(found));
@@ -101,7 +185,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () -> contract.queryFactChecker(ctx, factChecker.getFcid()));
         }
     }
@@ -131,17 +215,132 @@ public class FactCheckerContractTest {
 
         private void runTest(List<KeyValue> resList, String bookmark, int numFactCheckers) {
             new Expectations() {
-                { ctx.getStub(); result = stub; }
-                { stub.getStateByRangeWithPagination("", "", 100, ""); result = states; }
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
                 { metadata.getFetchedRecordsCount(); result = numFactCheckers; }
                 { metadata.getBookmark(); result = bookmark;}
                 { states.getMetadata(); result = metadata; }
                 { states.iterator(); result = resList.iterator(); minTimes=0;}
             };
 
-            PaginatedResults result = contract.queryAllFactCheckers(ctx, "100", "");
-            assertEquals(bookmark, result.getBookmark());
-            assertEquals(numFactCheckers, result.getResults().size());
+            JsonNode result = null;
+            try {
+                result = new ObjectMapper().readTree(contract.queryAllFactCheckers(ctx, "100", "", ""));
+            } catch (IOException e) {
+                fail(e);
+            }
+            assertEquals(bookmark, result.get("bookmark").asText());
+            assertEquals(numFactCheckers, result.get("results").size());
+            result.get("results").forEach(record -> assertTrue(record.isObject()));
+        }
+    }
+
+    @Nested
+    class InvokeQueryReviewsByFactCheckerTransaction {
+
+        @Test
+        void whenFactCheckerHasReviews() throws IOException {
+            String fcid = factChecker.getFcid();
+            List<KeyValue> entries = Arrays.asList(
+                    new TestUtils.MockKeyValue(StateIndex.FACT_CHECKER_REVIEWS.key(fcid, "HYPOTHESIS", "hypothesis-1"), "\u0000"),
+                    new TestUtils.MockKeyValue(StateIndex.FACT_CHECKER_REVIEWS.key(fcid, "SOURCE", "source-1"), "\u0000"));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 2; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes=0;}
+                { stub.getState(StateKeys.reviewKey("hypothesis-1", fcid)); result = StateCodec.getDefault().encode(0.9f); }
+                { stub.getState(StateKeys.reviewKey("source-1", fcid)); result = StateCodec.getDefault().encode(0.6f); }
+            };
+
+            JsonNode result = new ObjectMapper().readTree(contract.queryReviewsByFactChecker(ctx, fcid, "100", ""));
+            JsonNode reviews = result.get("results");
+            assertEquals(2, reviews.size());
+            assertEquals("HYPOTHESIS", reviews.get(0).get("entityType").asText());
+            assertEquals("hypothesis-1", reviews.get(0).get("entityId").asText());
+            assertEquals(fcid, reviews.get(0).get("fcid").asText());
+            assertEquals(0.9f, reviews.get(0).get("reliability").floatValue());
+            assertEquals("SOURCE", reviews.get(1).get("entityType").asText());
+            assertEquals(0.6f, reviews.get(1).get("reliability").floatValue());
+        }
+
+        @Test
+        void whenAnIndexedReviewIsMissing() throws IOException {
+            String fcid = factChecker.getFcid();
+            List<KeyValue> entries = Arrays.asList(
+                    new TestUtils.MockKeyValue(StateIndex.FACT_CHECKER_REVIEWS.key(fcid, "HYPOTHESIS", "hypothesis-1"), "\u0000"),
+                    new TestUtils.MockKeyValue(StateIndex.FACT_CHECKER_REVIEWS.key(fcid, "SOURCE", "source-1"), "\u0000"));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 2; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes=0;}
+                { stub.getState(StateKeys.reviewKey("hypothesis-1", fcid)); result = new byte[0]; }
+                { stub.getState(StateKeys.reviewKey("source-1", fcid)); result = StateCodec.getDefault().encode(0.6f); }
+            };
+
+            JsonNode result = new ObjectMapper().readTree(contract.queryReviewsByFactChecker(ctx, fcid, "100", ""));
+            JsonNode reviews = result.get("results");
+            assertEquals(1, reviews.size());
+            assertEquals("source-1", reviews.get(0).get("entityId").asText());
+        }
+    }
+
+    @Nested
+    class InvokeSubmitReviewsTransaction {
+
+        String fcid = factChecker.getFcid();
+
+        @Test
+        public void whenReviewsAreValid() throws IOException {
+            new Expectations() {
+                { stub.getTxId(); result = "tx1"; }
+                { stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, "hypothesis-1")); result = new byte[]{1}; }
+                { stub.getState(StateKeys.entityKey(ContractType.SOURCE, "source-1")); result = new byte[]{1}; }
+            };
+            String results = contract.submitReviews(ctx, fcid, "[" +
+                    "{\"entityType\": \"HYPOTHESIS\", \"entityId\": \"hypothesis-1\", \"reliability\": \"0.9\"}," +
+                    "{\"entityType\": \"SOURCE\", \"entityId\": \"source-1\", \"reliability\": \"0.4\"}," +
+                    "{\"entityType\": \"HYPOTHESIS\", \"entityId\": \"hypothesis-1\", \"reliability\": \"0.8\"}]");
+
+            JsonNode reviews = new ObjectMapper().readTree(results);
+            assertEquals(3, reviews.size());
+            assertEquals("hypothesis-1", reviews.get(0).get("entityId").asText());
+            assertEquals(0.8f, reviews.get(0).get("reliability").floatValue()); // the last review of an entity wins
+            assertEquals("SOURCE", reviews.get(1).get("entityType").asText());
+            assertEquals(fcid, reviews.get(1).get("fcid").asText());
+
+            byte[] hypothesisReview = StateCodec.getDefault().encode(0.8f);
+            new Verifications() {
+                { stub.getState(StateKeys.reviewKey("hypothesis-1", fcid)); times = 1; }
+                { stub.putState(StateKeys.reviewKey("hypothesis-1", fcid), hypothesisReview); times = 1; }
+                { stub.putState(StateKeys.reviewKey("source-1", fcid), (byte[]) any); times = 1; }
+                { stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, "hypothesis-1")); times = 1; }
+            };
+        }
+
+        @Test
+        public void whenAReviewedEntityDoesNotExist() {
+            new Expectations() {
+                { stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, "hypothesis-1")); result = new byte[]{1}; }
+                { stub.getState(StateKeys.entityKey(ContractType.SOURCE, "source-1")); result = new byte[0]; }
+            };
+
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.submitReviews(ctx, fcid, "[" +
+                    "{\"entityType\": \"HYPOTHESIS\", \"entityId\": \"hypothesis-1\", \"reliability\": \"0.9\"}," +
+                    "{\"entityType\": \"SOURCE\", \"entityId\": \"source-1\", \"reliability\": \"0.4\"}]"));
+
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenAReviewIsInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.submitReviews(ctx, fcid, "[" +
+                    "{\"entityType\": \"HYPOTHESIS\", \"entityId\": \"hypothesis-1\", \"reliability\": \"0.9\"}," +
+                    "{\"entityType\": \"FACT_CHECKER\", \"entityId\": \"fc-1\", \"reliability\": \"0.4\"}]"));
+
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
         }
     }
 
@@ -150,8 +349,8 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
 
             FactChecker updated = contract.updateFactCheckerName(ctx, factChecker.getFcid(), "Chuck Fact Jr.");
             assertEquals("Chuck Fact Jr.", updated.getName());
@@ -159,7 +358,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateFactCheckerName(ctx, factChecker.getFcid(), "Chuck Fact Jr."));
         }
@@ -170,8 +369,8 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
 
             FactChecker updated = contract.updateFactCheckerScore(ctx, factChecker.getFcid(), "0.95", "0.97");
             assertEquals(0.95f, updated.getScore().getReliability().floatValue());
@@ -180,7 +379,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateFactCheckerScore(ctx, factChecker.getFcid(), "0.95", "0.97"));
         }
@@ -191,8 +390,8 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
 
             FactChecker updated = contract.updateFactCheckerEmail(ctx, factChecker.getFcid(), "chuck.fact@informiz.org");
             assertEquals("chuck.fact@informiz.org", updated.getEmail());
@@ -200,7 +399,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateFactCheckerEmail(ctx, factChecker.getFcid(), "chuck.fact@informiz.org"));
         }
@@ -211,8 +410,8 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
 
             FactChecker updated = contract.updateFactCheckerLink(ctx, factChecker.getFcid(), "https://www.facebook.com/chuckfact");
             assertEquals("https://www.facebook.com/chuckfact", updated.getLink());
@@ -220,7 +419,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateFactCheckerLink(ctx, factChecker.getFcid(), "https://www.facebook.com/chuckfact"));
         }
@@ -231,8 +430,8 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid());
-                result = factCheckerJson; }};
+            new Expectations() { { stub.getState(factCheckerKey);
+                result = factCheckerState; }};
 
             FactChecker updated = contract.deleteFactChecker(ctx, factChecker.getFcid());
             assertEquals(false, updated.getActive());
@@ -240,7 +439,7 @@ public class FactCheckerContractTest {
 
         @Test
         public void whenFactCheckerDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(factChecker.getFcid()); result = ""; } };
+            new Expectations() { { stub.getState(factCheckerKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.deleteFactChecker(ctx, factChecker.getFcid()));
         }
@@ -1,56 +1,81 @@
 package informiz.org.chaincode;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import informiz.org.chaincode.model.ContractType;
-import informiz.org.chaincode.model.PaginatedResults;
 import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.ReferenceText;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Score;
+import informiz.org.chaincode.model.Source;
 import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import mockit.*;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class HypothesisContractTest {
 
-    @Mocked
-    Context ctx;
-
     @Mocked
     ChaincodeStub stub;
 
+    Context ctx;
+
     @Tested
     HypothesisContract contract = new HypothesisContract();
 
     static Hypothesis hypothesis = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
 
+    static Instant txTime = Instant.ofEpochSecond(1600000000L);
+
+    static String hypothesisKey = StateKeys.entityKey(ContractType.HYPOTHESIS, hypothesis.getHid());
+
+    static ObjectMapper mapper = new ObjectMapper();
+
     static String hypothesisJson;
 
+    static byte[] hypothesisState;
+
+    static byte[] reviewState;
+
     @BeforeAll
-    private static void prepareTest() throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private static void prepareTest() throws IOException {
         hypothesisJson = mapper.writeValueAsString(hypothesis);
-        // mock the creation of UUIDs to always return the test-hypothesise's id
-        new MockUp<Utils>() {
-            @Mock
-            public String createUuid(ContractType contractType) {
-                return hypothesis.getHid();
-            }
-        };
+        hypothesisState = StateCodec.getDefault().encode(hypothesis);
+        reviewState = StateCodec.getDefault().encode(0.96f);
+    }
+
+    @BeforeEach
+    public void createContext() {
+        new Expectations() { { stub.getCreator(); result = TestUtils.creator(); } };
+        ctx = contract.createContext(stub);
     }
 
     @Nested
@@ -62,19 +87,94 @@ public class HypothesisContractTest {
          */
         @Test
         public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
             Hypothesis created = contract.createHypothesis(ctx, hypothesis.getClaim(), hypothesis.getLocale().toString());
-            assertTrue(hypothesis.equals(created));
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-0", created.getHid()); // ids are generated from the transaction id
         }
 
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
             Hypothesis created = contract.createHypothesis(ctx, hypothesis.getClaim(), hypothesis.getLocale().toString());
-            assertTrue(hypothesis.equals(created)); // Hypothesis's 'equals' method only considers hypothesise id
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-0", created.getHid()); // ids are generated from the transaction id
             assertTrue(hypothesis.getScore().equals(created.getScore()));
             assertEquals(hypothesis.getClaim(), created.getClaim());
             assertEquals(hypothesis.getReviews(), hypothesis.getReviews());
+
+            new Verifications() { { stub.putState(StateIndex.RECENT.key(ContractType.HYPOTHESIS.name(),
+                    StateKeys.newestFirst(txTime), created.getHid()), (byte[]) any); } };
+        }
+    }
+
+    @Nested
+    class InvokeCreateHypothesisBatchTransaction {
+
+        @Test
+        public void publishesEveryCreatedHypothesis() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
+            contract.createHypothesisBatch(ctx,
+                    "[{\"claim\": \"claim-1\", \"locale\": \"en_US\"}, {\"claim\": \"claim-2\", \"locale\": \"fr_CA\"}]");
+            contract.afterTransaction(ctx, null);
+
+            List<byte[]> payloads = new ArrayList<>();
+            new Verifications() { { stub.setEvent(ChangeEvents.EVENT_NAME, withCapture(payloads)); times = 1; } };
+            JsonNode changes = mapper.readTree(payloads.get(0)).get("changes");
+            assertEquals(2, changes.size());
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-0", changes.get(0).get("id").asText());
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-1", changes.get(1).get("id").asText());
+            assertEquals("CREATED", changes.get(1).get("kind").asText());
+        }
+
+        @Test
+        public void whenBatchIsValid() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
+            String ids = contract.createHypothesisBatch(ctx,
+                    "[{\"claim\": \"claim-1\", \"locale\": \"en_US\"}, {\"claim\": \"claim-2\", \"locale\": \"fr_CA\"}]");
+
+            JsonNode created = mapper.readTree(ids);
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-0", created.get(0).asText());
+            assertEquals(ContractType.HYPOTHESIS + "-tx1-1", created.get(1).asText());
+
+            contract.afterTransaction(ctx, ids);
+            // 2 records, with 2 score-index entries and a creation-time entry each
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 8; } };
+        }
+
+        @Test
+        public void whenAnItemIsInvalid() {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.createHypothesisBatch(ctx,
+                    "[{\"claim\": \"claim-1\", \"locale\": \"en_US\"}, {\"claim\": \"claim-2\"}]"));
+
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+    }
+
+    @Nested
+    class InvokeGetHypothesesTransaction {
+
+        @Test
+        public void whenSomeHypothesesExist() throws IOException {
+            String missingKey = StateKeys.entityKey(ContractType.HYPOTHESIS, "no-such-hypothesis");
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+                { stub.getState(missingKey); result = new byte[0]; }
+            };
+
+            JsonNode result = mapper.readTree(contract.getHypotheses(ctx,
+                    String.format("[\"%s\", \"no-such-hypothesis\"]", hypothesis.getHid())));
+            assertEquals(1, result.get("results").size());
+            assertEquals(hypothesis.getHid(), result.get("results").get(0).get("hid").asText());
+            assertEquals("no-such-hypothesis", result.get("missing").get(0).asText());
+        }
+
+        @Test
+        public void whenIdsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.getHypotheses(ctx, "[]"));
         }
     }
 
@@ -83,20 +183,158 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid());
-                result = hypothesisJson; }};
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
 
             Hypothesis found = contract.queryHypothesis(ctx, hypothesis.getHid());
             assertTrue(hypothesis.equals(found));
         }
 
+        @Test
+        public void whenHypothesisIsStoredAsJson() {
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisJson.getBytes(StandardCharsets.UTF_8); }};
+
+            Hypothesis found = contract.queryHypothesis(ctx, hypothesis.getHid());
+            assertTrue(hypothesis.equals(found));
+        }
+
+        @Test
+        public void whenHypothesisHasReviews() {
+            Map<String, String> reviews = new HashMap<>();
+            reviews.put(StateKeys.reviewKey(hypothesis.getHid(), "factChecker1"), "0.96");
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any);
+                    result = new TestUtils.MockResultsIterator(reviews);
+                    result = new TestUtils.MockResultsIterator(new HashMap<>()); }
+            };
+
+            Hypothesis found = contract.queryHypothesis(ctx, hypothesis.getHid());
+            assertEquals(1, found.getReviews().size());
+            assertEquals(0.96f, found.getReviews().get("factChecker1").floatValue());
+            assertEquals(hypothesis.getScore(), found.getScore());
+        }
+
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid()); result = ""; } };
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () -> contract.queryHypothesis(ctx, hypothesis.getHid()));
         }
     }
 
+    @Nested
+    class InvokeQueryRecentHypothesesTransaction {
+
+        @Test
+        void whenHypothesisExist() throws IOException {
+            List<KeyValue> entries = Arrays.asList(new TestUtils.MockKeyValue(StateIndex.RECENT.key(
+                    ContractType.HYPOTHESIS.name(), StateKeys.newestFirst(txTime), hypothesis.getHid()), "\u0000"));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 20, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 1; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes = 0;}
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+            };
+
+            JsonNode result = mapper.readTree(contract.queryRecentHypotheses(ctx, "20", ""));
+            assertEquals(1, result.get("results").size());
+            assertEquals(hypothesis.getHid(), result.get("results").get(0).get("hid").asText());
+        }
+    }
+
+    @Nested
+    class InvokeQueryHypothesisGraphTransaction {
+
+        @Test
+        public void whenReferencesShareASource() throws IOException {
+            Hypothesis cited = Hypothesis.createHypothesis("Some hypothesis...", Locale.GERMANY);
+            cited.addReference("text-1");
+            cited.addReference("text-2");
+            cited.addReference("text-3");
+            ReferenceText text1 = ReferenceText.createRefText("text-1", "Some text", "source-1", "link", Locale.UK);
+            ReferenceText text2 = ReferenceText.createRefText("text-2", "Other text", "source-1", "link", Locale.UK);
+            text1.addReview("factChecker1", 0.8f);
+            Source source = Source.createSource("source-1", "NASA", Utils.createScore("0.9", "0.8"));
+            StateCodec codec = StateCodec.getDefault();
+            new Expectations() {
+                { stub.getState(StateKeys.entityKey(ContractType.HYPOTHESIS, cited.getHid()));
+                    result = codec.encode(cited); }
+                { stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, "text-1")); result = codec.encode(text1); }
+                { stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, "text-2")); result = codec.encode(text2); }
+                { stub.getState(StateKeys.entityKey(ContractType.REF_TEXT, "text-3")); result = new byte[0]; }
+                { stub.getState(StateKeys.entityKey(ContractType.SOURCE, "source-1")); result = codec.encode(source);
+                    times = 1; }
+            };
+
+            JsonNode graph = mapper.readTree(contract.queryHypothesisGraph(ctx, cited.getHid(), 2));
+            assertEquals(cited.getHid(), graph.get("hypothesis").get("hid").asText());
+            assertEquals(2, graph.get("referenceTexts").size());
+            assertEquals(0, graph.get("referenceTexts").get(0).get("reviews").size());
+            assertEquals(1, graph.get("sources").size());
+            assertEquals(0.9f, graph.get("sources").get(0).get("score").get("reliability").floatValue());
+            assertEquals("text-3", graph.get("missing").get(0).asText());
+        }
+
+        @Test
+        public void whenDepthIsZero() throws IOException {
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
+
+            JsonNode graph = mapper.readTree(contract.queryHypothesisGraph(ctx, hypothesis.getHid(), 0));
+            assertEquals(hypothesis.getHid(), graph.get("hypothesis").get("hid").asText());
+            assertEquals(0, graph.get("referenceTexts").size());
+            assertEquals(0, graph.get("sources").size());
+        }
+
+        @Test
+        public void whenHypothesisDoesNotExist() {
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class,
+                    () -> contract.queryHypothesisGraph(ctx, hypothesis.getHid(), 2));
+        }
+    }
+
+    @Nested
+    class InvokeQueryHypothesisScoreTransaction {
+
+        @Test
+        public void whenHypothesisExists() {
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
+
+            Score score = contract.queryHypothesisScore(ctx, hypothesis.getHid());
+            assertEquals(hypothesis.getScore(), score);
+            new Verifications() { { stub.getStateByPartialCompositeKey(StateKeys.reviewPrefix(hypothesis.getHid()));
+                times = 0; } };
+        }
+
+        @Test
+        public void whenReviewsArePending() throws JsonProcessingException {
+            Map<String, String> pending = new HashMap<>();
+            pending.put(StateKeys.statisticsKey(hypothesis.getHid(), "tx1", "factChecker1"),
+                    mapper.writeValueAsString(ReviewStatistics.change(null, 0.9f)));
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisJson.getBytes(StandardCharsets.UTF_8); }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any);
+                    result = new TestUtils.MockResultsIterator(pending); }
+            };
+
+            Score score = contract.queryHypothesisScore(ctx, hypothesis.getHid());
+            assertEquals(0.9f, score.getReliability().floatValue());
+            new Verifications() { { stub.delState(anyString); times = 0; } };
+        }
+
+        @Test
+        public void whenHypothesisDoesNotExist() {
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class,
+                    () -> contract.queryHypothesisScore(ctx, hypothesis.getHid()));
+        }
+    }
+
     @Mocked QueryResultsIteratorWithMetadata<KeyValue> states;
     @Mocked ChaincodeShim.QueryResponseMetadata metadata;
 
@@ -122,17 +360,22 @@ public class HypothesisContractTest {
 
         private void runTest(List<KeyValue> resList, String bookmark, int numHypothesis) {
             new Expectations() {
-                { ctx.getStub(); result = stub; }
-                { stub.getStateByRangeWithPagination("", "", 100, ""); result = states; }
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
                 { metadata.getFetchedRecordsCount(); result = numHypothesis; }
                 { metadata.getBookmark(); result = bookmark;}
                 { states.getMetadata(); result = metadata; }
                 { states.iterator(); result = resList.iterator(); minTimes = 0;}
             };
 
-            PaginatedResults result = contract.queryAllHypothesis(ctx, "100", "");
-            assertEquals(bookmark, result.getBookmark());
-            assertEquals(numHypothesis, result.getResults().size());
+            JsonNode result = null;
+            try {
+                result = mapper.readTree(contract.queryAllHypothesis(ctx, "100", "", ""));
+            } catch (IOException e) {
+                fail(e);
+            }
+            assertEquals(bookmark, result.get("bookmark").asText());
+            assertEquals(numHypothesis, result.get("results").size());
+            result.get("results").forEach(record -> assertTrue(record.isObject()));
         }
     }
 
@@ -141,8 +384,8 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid());
-                result = hypothesisJson; }};
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
 
             Hypothesis updated = contract.updateHypothesisScore(ctx, hypothesis.getHid(), "0.95", "0.97");
             assertEquals(0.95f, updated.getScore().getReliability().floatValue());
@@ -151,7 +394,7 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid()); result = ""; } };
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateHypothesisScore(ctx, hypothesis.getHid(), "0.95", "0.97"));
         }
@@ -162,8 +405,8 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid());
-                result = hypothesisJson; }};
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
 
             Hypothesis updated = contract.updateHypothesisLocale(ctx, hypothesis.getHid(), Locale.CANADA_FRENCH.toString());
             assertEquals(Locale.CANADA_FRENCH, updated.getLocale());
@@ -171,33 +414,129 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid()); result = ""; } };
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateHypothesisScore(ctx, hypothesis.getHid(), "0.95", "0.97"));
         }
     }
 
+    @Nested
+    class InvokeRefreshScoreTransaction {
+
+        @Test
+        public void whenHypothesisHasPendingReviews() throws JsonProcessingException {
+            String deltaKey = StateKeys.statisticsKey(hypothesis.getHid(), "tx1", "factChecker1");
+            Map<String, String> pending = new HashMap<>();
+            pending.put(deltaKey, mapper.writeValueAsString(ReviewStatistics.change(null, 0.9f)));
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any); result = new TestUtils.MockResultsIterator(pending); }
+            };
+
+            Hypothesis updated = contract.refreshHypothesisScore(ctx, hypothesis.getHid());
+            assertEquals(0.9f, updated.getScore().getReliability().floatValue());
+            assertEquals(1, updated.getStatistics().getCount());
+
+            new Verifications() { { stub.delState(deltaKey); } };
+        }
+
+        @Test
+        public void whenHypothesisDoesNotExist() {
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.refreshHypothesisScore(ctx, hypothesis.getHid()));
+        }
+    }
+
     @Nested
     class InvokeAddRemoveReviewTransaction {
 
+        String reviewKey = StateKeys.reviewKey(hypothesis.getHid(), "factChecker1");
+
         @Test
-        public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid());
-                result = hypothesisJson; }};
+        public void whenReviewIsAdded() {
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
 
-            Hypothesis updated = contract.addOrUpdateReview(ctx, hypothesis.getHid(), "factChecker1", "0.96");
-            assertEquals(1, updated.getReviews().size());
-            assertEquals(0.96f, updated.getReviews().get("factChecker1").floatValue());
+            Review review = contract.addOrUpdateReview(ctx, hypothesis.getHid(), "factChecker1", "0.96");
+            assertEquals(0.96f, review.getReliability().floatValue());
+            assertEquals(ContractType.HYPOTHESIS.name(), review.getEntityType());
 
-            updated = contract.removeReview(ctx, hypothesis.getHid(), "factChecker1");
-            assertEquals(0, updated.getReviews().size());
+            new Verifications() {
+                { stub.putState(reviewKey, reviewState); }
+                { stub.putState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.HYPOTHESIS.name(), hypothesis.getHid()), (byte[]) any); }
+                { stub.putState(hypothesisKey, (byte[]) any); times = 0; }
+            };
         }
 
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid()); result = ""; } };
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
+
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.addOrUpdateReview(ctx, hypothesis.getHid(), "factChecker1", "0.96"));
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenReviewIsUpdated() {
+            new Expectations() {
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+                { stub.getState(reviewKey); result = reviewState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
+
+            contract.addOrUpdateReview(ctx, hypothesis.getHid(), "factChecker1", "0.5");
+
+            new Verifications() { {
+                stub.putState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.HYPOTHESIS.name(),
+                        hypothesis.getHid()), (byte[]) any); times = 0;
+            } };
+        }
+
+        @Test
+        public void whenReviewExists() {
+            new Expectations() {
+                { stub.getState(reviewKey); result = reviewState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
+
+            Review removed = contract.removeReview(ctx, hypothesis.getHid(), "factChecker1");
+            assertEquals(0.96f, removed.getReliability().floatValue());
+
+            new Verifications() {
+                { stub.delState(reviewKey); }
+                { stub.delState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.HYPOTHESIS.name(), hypothesis.getHid())); }
+            };
+        }
+
+        @Test
+        public void whenReviewDoesNotExist() {
+            new Expectations() { { stub.getState(reviewKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
-                    contract.addOrUpdateReview(ctx, hypothesis.getHid(), "factChecker1", "0.96"));
+                    contract.removeReview(ctx, hypothesis.getHid(), "factChecker1"));
+        }
+    }
+
+    @Nested
+    class InvokeQueryHypothesisByReferenceTransaction {
+
+        @Test
+        void whenReferenceIsCited() throws IOException {
+            List<KeyValue> entries = Arrays.asList(
+                    new TestUtils.MockKeyValue(StateIndex.TEXT_HYPOTHESES.key("ref-id1", hypothesis.getHid()), "\u0000"));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 1; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes = 0;}
+                { stub.getState(hypothesisKey); result = hypothesisState; }
+            };
+
+            JsonNode result = mapper.readTree(contract.queryHypothesisByReference(ctx, "ref-id1", "100", ""));
+            assertEquals(1, result.get("results").size());
+            assertEquals(hypothesis.getHid(), result.get("results").get(0).get("hid").asText());
         }
     }
 
@@ -206,18 +545,44 @@ public class HypothesisContractTest {
 
         @Test
         public void whenHypothesisExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid());
-                result = hypothesisJson; }};
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
 
             Hypothesis updated = contract.addReference(ctx, hypothesis.getHid(), "ref-id1");
             assertTrue(updated.getReferences().containsKey("ref-id1"));
             updated = contract.removeReference(ctx, hypothesis.getHid(), "ref-id1");
             assertFalse(updated.getReferences().containsKey("ref-id1"));
+
+            new Verifications() { { stub.putState(StateIndex.TEXT_HYPOTHESES.key("ref-id1", hypothesis.getHid()), (byte[]) any); } };
+        }
+
+        @Test
+        public void whenReferenceIsRemoved() throws IOException {
+            Hypothesis citing = Hypothesis.createHypothesis(hypothesis.getHid(), hypothesis.getClaim(), hypothesis.getLocale());
+            citing.addReference("ref-id1");
+            byte[] citingState = StateCodec.getDefault().encode(citing);
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = citingState; }};
+
+            Hypothesis updated = contract.removeReference(ctx, hypothesis.getHid(), "ref-id1");
+            assertFalse(updated.getReferences().containsKey("ref-id1"));
+
+            new Verifications() { { stub.delState(StateIndex.TEXT_HYPOTHESES.key("ref-id1", hypothesis.getHid())); } };
+        }
+
+        @Test
+        public void whenReferenceIsNotCited() {
+            new Expectations() { { stub.getState(hypothesisKey);
+                result = hypothesisState; }};
+
+            contract.removeReference(ctx, hypothesis.getHid(), "ref-id1");
+
+            new Verifications() { { stub.delState(anyString); times = 0; } };
         }
 
         @Test
         public void whenHypothesisDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(hypothesis.getHid()); result = ""; } };
+            new Expectations() { { stub.getState(hypothesisKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.addReference(ctx, hypothesis.getHid(), "ref-id1"));
         }
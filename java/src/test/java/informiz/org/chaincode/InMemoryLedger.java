@@ -0,0 +1,252 @@
+package informiz.org.chaincode;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContractInterface;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * An in-memory ledger, for running whole transaction sequences against the contracts in-process.
+ * <p>
+ * Transactions run on an {@link InMemoryStub} and are committed in order, with Fabric's semantics: a transaction
+ * reads the committed state only, its writes are applied when it is committed, and it is invalidated (and its writes
+ * and event discarded) if a key or range it read was changed by a transaction committed in the meantime.
+ * Every committed write is kept in the key's history, and every committed event is kept in order.
+ */
+public final class InMemoryLedger {
+
+    private static final Instant GENESIS = Instant.parse("2020-01-01T00:00:00Z");
+
+    private final TreeMap<String, Versioned> state = new TreeMap<>();
+
+    private final Map<String, List<KeyModification>> history = new HashMap<>();
+
+    private final List<Event> events = new ArrayList<>();
+
+    private long transactions;
+
+    private long commits;
+
+    /**
+     * A committed value, with the version of the transaction that wrote it
+     */
+    static final class Versioned {
+        final byte[] value;
+        final long version;
+
+        private Versioned(final byte[] value, final long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A committed chaincode event
+     */
+    public static final class Event {
+        private final String txId;
+        private final String name;
+        private final byte[] payload;
+
+        private Event(final String txId, final String name, final byte[] payload) {
+            this.txId = txId;
+            this.name = name;
+            this.payload = payload;
+        }
+
+        public String getTxId() {
+            return txId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Start a transaction. Transactions get sequential ids and timestamps, one second apart.
+     * @param function the invoked function, as returned by <code>getFunction</code>
+     * @param args the function's arguments
+     * @return the transaction's stub
+     */
+    public InMemoryStub newTransaction(final String function, final String... args) {
+        transactions++;
+        return new InMemoryStub(this, "tx" + transactions, GENESIS.plusSeconds(transactions), function, args);
+    }
+
+    /**
+     * Run a transaction and commit it.
+     * @param contract the contract
+     * @param function the name of the transaction
+     * @param transaction the transaction, called with the contract's context
+     * @return the result of the transaction
+     * @throws IllegalStateException if the transaction was invalidated by a read conflict
+     */
+    public <T> T submit(final ContractInterface contract, final String function,
+                        final Function<Context, T> transaction) {
+        InMemoryStub stub = newTransaction(function);
+        T result = run(contract, stub, transaction);
+        if (!commit(stub)) {
+            throw new IllegalStateException(String.format("Transaction %s (%s) has a read conflict",
+                    stub.getTxId(), function));
+        }
+        return result;
+    }
+
+    /**
+     * Run a transaction without committing it.
+     * @param contract the contract
+     * @param function the name of the transaction
+     * @param transaction the transaction, called with the contract's context
+     * @return the result of the transaction
+     */
+    public <T> T evaluate(final ContractInterface contract, final String function,
+                          final Function<Context, T> transaction) {
+        return run(contract, newTransaction(function), transaction);
+    }
+
+    private static <T> T run(final ContractInterface contract, final InMemoryStub stub,
+                             final Function<Context, T> transaction) {
+        Context ctx = contract.createContext(stub);
+        contract.beforeTransaction(ctx);
+        T result = transaction.apply(ctx);
+        contract.afterTransaction(ctx, result);
+        return result;
+    }
+
+    /**
+     * Validate a transaction against the committed state, and apply its writes and event if it is valid.
+     * @param stub the transaction's stub
+     * @return true if the transaction was committed, false if it was invalidated by a read conflict
+     */
+    public boolean commit(final InMemoryStub stub) {
+        if (!stub.isValid()) {
+            return false;
+        }
+        commits++;
+        for (Map.Entry<String, byte[]> write : stub.getWrites().entrySet()) {
+            byte[] value = write.getValue();
+            boolean deleted = value == null || value.length == 0;
+            if (deleted) {
+                state.remove(write.getKey());
+            } else {
+                state.put(write.getKey(), new Versioned(value, commits));
+            }
+            history.computeIfAbsent(write.getKey(), (key) -> new ArrayList<>()).add(
+                    new Modification(stub.getTxId(), stub.getTxTimestamp(), deleted ? new byte[0] : value, deleted));
+        }
+        if (stub.getEventName() != null) {
+            events.add(new Event(stub.getTxId(), stub.getEventName(), stub.getEventPayload()));
+        }
+        return true;
+    }
+
+    /**
+     * @param key a key
+     * @return the committed value of the key, or null if there is none
+     */
+    public byte[] getState(final String key) {
+        Versioned versioned = state.get(key);
+        return versioned == null ? null : versioned.value;
+    }
+
+    /**
+     * @return the number of keys in the committed state
+     */
+    public int size() {
+        return state.size();
+    }
+
+    /**
+     * @return the committed events, in commit order
+     */
+    public List<Event> getEvents() {
+        return Collections.unmodifiableList(events);
+    }
+
+    Versioned read(final String key) {
+        return state.get(key);
+    }
+
+    /**
+     * @param start the first key, inclusive
+     * @param end the last key, exclusive, or null for no bound
+     * @return a view of the committed state in the range
+     */
+    NavigableMap<String, Versioned> range(final String start, final String end) {
+        if (end == null) {
+            return state.tailMap(start, true);
+        }
+        if (start.compareTo(end) >= 0) {
+            return Collections.emptyNavigableMap();
+        }
+        return state.subMap(start, true, end, false);
+    }
+
+    NavigableMap<String, Versioned> all() {
+        return state;
+    }
+
+    /**
+     * @param key a key
+     * @return the committed modifications of the key, newest first
+     */
+    List<KeyModification> history(final String key) {
+        List<KeyModification> modifications = new ArrayList<>(history.getOrDefault(key, Collections.emptyList()));
+        Collections.reverse(modifications);
+        return modifications;
+    }
+
+    private static final class Modification implements KeyModification {
+        private final String txId;
+        private final Instant timestamp;
+        private final byte[] value;
+        private final boolean deleted;
+
+        private Modification(final String txId, final Instant timestamp, final byte[] value, final boolean deleted) {
+            this.txId = txId;
+            this.timestamp = timestamp;
+            this.value = value;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return deleted;
+        }
+    }
+}
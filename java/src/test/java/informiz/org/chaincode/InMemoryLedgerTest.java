@@ -0,0 +1,320 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.Score;
+import informiz.org.chaincode.model.Source;
+import informiz.org.chaincode.state.ChangeEvents;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class InMemoryLedgerTest {
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    InMemoryLedger ledger = new InMemoryLedger();
+
+    private void put(final String key, final String value) {
+        InMemoryStub stub = ledger.newTransaction("put");
+        stub.putStringState(key, value);
+        assertTrue(ledger.commit(stub));
+    }
+
+    private static List<String> keys(final Iterable<KeyValue> results) {
+        List<String> keys = new ArrayList<>();
+        results.forEach((entry) -> keys.add(entry.getKey()));
+        return keys;
+    }
+
+    @Nested
+    class Transactions {
+
+        @Test
+        public void readTheCommittedStateOnly() {
+            InMemoryStub stub = ledger.newTransaction("put");
+            stub.putStringState("a", "1");
+            assertEquals(0, stub.getState("a").length);
+            assertNull(ledger.getState("a"));
+
+            assertTrue(ledger.commit(stub));
+            assertEquals("1", ledger.newTransaction("get").getStringState("a"));
+        }
+
+        @Test
+        public void areInvalidatedByAChangedRead() {
+            put("a", "1");
+            InMemoryStub first = ledger.newTransaction("update");
+            InMemoryStub second = ledger.newTransaction("update");
+            first.putStringState("a", first.getStringState("a") + "2");
+            second.putStringState("a", second.getStringState("a") + "3");
+
+            assertTrue(ledger.commit(first));
+            assertFalse(ledger.commit(second));
+            assertEquals("12", new String(ledger.getState("a"), StandardCharsets.UTF_8));
+        }
+
+        @Test
+        public void areInvalidatedByAPhantomInARange() {
+            put("a", "1");
+            InMemoryStub reader = ledger.newTransaction("count");
+            reader.putStringState("count", String.valueOf(keys(reader.getStateByRange("a", "b")).size()));
+            put("a1", "2");
+
+            assertFalse(ledger.commit(reader));
+        }
+
+        @Test
+        public void deleteKeys() {
+            put("a", "1");
+            InMemoryStub stub = ledger.newTransaction("delete");
+            stub.delState("a");
+            assertTrue(ledger.commit(stub));
+
+            assertNull(ledger.getState("a"));
+            assertEquals(0, ledger.size());
+        }
+    }
+
+    @Nested
+    class Scans {
+
+        @Test
+        public void pageThroughARangeWithBookmarks() {
+            for (String key : new String[] { "k1", "k2", "k3", "k4", "k5" }) {
+                put(key, key);
+            }
+            InMemoryStub stub = ledger.newTransaction("scan");
+
+            QueryResultsIteratorWithMetadata<KeyValue> first = stub.getStateByRangeWithPagination("k2", "", 2, "");
+            assertEquals(Arrays.asList("k2", "k3"), keys(first));
+            assertEquals("k4", first.getMetadata().getBookmark());
+
+            QueryResultsIteratorWithMetadata<KeyValue> last = stub.getStateByRangeWithPagination("k2", "", 2,
+                    first.getMetadata().getBookmark());
+            assertEquals(Arrays.asList("k4", "k5"), keys(last));
+            assertEquals("", last.getMetadata().getBookmark());
+        }
+
+        @Test
+        public void separatePlainAndCompositeKeys() {
+            InMemoryStub writer = ledger.newTransaction("put");
+            writer.putStringState("plain", "1");
+            writer.putStringState(writer.createCompositeKey("type", "a", "1").toString(), "2");
+            writer.putStringState(writer.createCompositeKey("type", "b", "1").toString(), "3");
+            assertTrue(ledger.commit(writer));
+            InMemoryStub stub = ledger.newTransaction("scan");
+
+            assertEquals(Arrays.asList("plain"), keys(stub.getStateByRange("", "")));
+            List<String> composite = keys(stub.getStateByPartialCompositeKey("type", "a"));
+            assertEquals(1, composite.size());
+            CompositeKey split = stub.splitCompositeKey(composite.get(0));
+            assertEquals("type", split.getObjectType());
+            assertEquals(Arrays.asList("a", "1"), split.getAttributes());
+        }
+
+        @Test
+        public void selectJsonRecords() throws IOException {
+            put("s1", "{\"docType\":\"SOURCE\",\"name\":\"nasa\",\"score\":{\"reliability\":0.9}}");
+            put("s2", "{\"docType\":\"SOURCE\",\"name\":\"blog\",\"score\":{\"reliability\":0.4}}");
+            put("h1", "{\"docType\":\"HYPOTHESIS\",\"score\":{\"reliability\":0.95}}");
+            put("index", "\u0000");
+            InMemoryStub stub = ledger.newTransaction("query");
+
+            List<KeyValue> selected = new ArrayList<>();
+            stub.getQueryResult("{\"selector\":{\"docType\":\"SOURCE\",\"score.reliability\":{\"$gt\":0.5}},"
+                    + "\"fields\":[\"name\"]}").forEach(selected::add);
+
+            assertEquals(1, selected.size());
+            JsonNode projected = mapper.readTree(selected.get(0).getValue());
+            assertEquals("nasa", projected.get("name").asText());
+            assertFalse(projected.has("score"));
+            assertEquals(Arrays.asList("h1", "s2"), keys(stub.getQueryResult(
+                    "{\"selector\":{\"$or\":[{\"docType\":\"HYPOTHESIS\"},{\"name\":{\"$in\":[\"blog\"]}}]}}")));
+        }
+    }
+
+    @Nested
+    class HistoryAndEvents {
+
+        @Test
+        public void historyIsNewestFirst() {
+            put("a", "1");
+            put("a", "2");
+            InMemoryStub delete = ledger.newTransaction("delete");
+            delete.delState("a");
+            assertTrue(ledger.commit(delete));
+
+            List<KeyModification> history = new ArrayList<>();
+            ledger.newTransaction("history").getHistoryForKey("a").forEach(history::add);
+            assertEquals(3, history.size());
+            assertTrue(history.get(0).isDeleted());
+            assertEquals("2", history.get(1).getStringValue());
+            assertTrue(history.get(1).getTimestamp().isAfter(history.get(2).getTimestamp()));
+        }
+
+        @Test
+        public void onlyTheLastEventOfAValidTransactionIsCommitted() {
+            put("a", "1");
+            InMemoryStub valid = ledger.newTransaction("events");
+            valid.setEvent("first", new byte[] { 1 });
+            valid.setEvent("second", new byte[] { 2 });
+            InMemoryStub conflicting = ledger.newTransaction("events");
+            conflicting.getState("a");
+            conflicting.setEvent("third", new byte[] { 3 });
+            put("a", "2");
+
+            assertTrue(ledger.commit(valid));
+            assertFalse(ledger.commit(conflicting));
+            assertEquals(1, ledger.getEvents().size());
+            assertEquals("second", ledger.getEvents().get(0).getName());
+        }
+    }
+
+    @Nested
+    class Contracts {
+
+        SourceContract contract = new SourceContract();
+
+        @Test
+        public void runTransactionSequences() throws IOException {
+            Source created = ledger.submit(contract, "createSource",
+                    (ctx) -> contract.createSource(ctx, "www.nasa.gov", "0.5", "0.5"));
+            ledger.submit(contract, "updateSourceScore",
+                    (ctx) -> contract.updateSourceScore(ctx, created.getSid(), "0.9", "0.8"));
+
+            Source read = ledger.evaluate(contract, "querySource",
+                    (ctx) -> contract.querySource(ctx, created.getSid()));
+            assertEquals(0.9f, read.getScore().getReliability().floatValue());
+            String history = ledger.evaluate(contract, "querySourceScoreHistory",
+                    (ctx) -> contract.querySourceScoreHistory(ctx, created.getSid(), 10));
+            assertEquals(2, mapper.readTree(history).get("points").size());
+            assertEquals(2, ledger.getEvents().size());
+            assertEquals(ChangeEvents.EVENT_NAME, ledger.getEvents().get(1).getName());
+        }
+
+        @Test
+        public void queryTheScoreHistoryOfHypotheses() throws IOException {
+            HypothesisContract hypotheses = new HypothesisContract();
+            Hypothesis created = ledger.submit(hypotheses, "createHypothesis",
+                    (ctx) -> hypotheses.createHypothesis(ctx, "Canada has ten provinces", "en_CA"));
+            String hid = created.getHid();
+            ledger.submit(hypotheses, "updateHypothesisScore",
+                    (ctx) -> hypotheses.updateHypothesisScore(ctx, hid, "0.9", "0.8"));
+
+            String history = ledger.evaluate(hypotheses, "queryHypothesisScoreHistory",
+                    (ctx) -> hypotheses.queryHypothesisScoreHistory(ctx, hid, 10));
+            JsonNode points = mapper.readTree(history).get("points");
+            assertEquals(2, points.size());
+            assertEquals(0.9f, points.get(1).get("reliability").floatValue());
+        }
+
+        @Test
+        public void deriveTheCurrentScoreFromReviews() {
+            Source created = ledger.submit(contract, "createSource",
+                    (ctx) -> contract.createSource(ctx, "www.nasa.gov", "0.5", "0.5"));
+            String sid = created.getSid();
+            ledger.submit(contract, "addReview", (ctx) -> contract.addReview(ctx, sid, "factChecker1", 0.9f));
+
+            Source reviewed = ledger.evaluate(contract, "querySource", (ctx) -> contract.querySource(ctx, sid));
+            assertEquals(0.9f, reviewed.getScore().getReliability().floatValue());
+            assertEquals(1, reviewed.getStatistics().getCount());
+
+            ledger.submit(contract, "updateSourceScore", (ctx) -> contract.updateSourceScore(ctx, sid, "0.2", "0.3"));
+            Source explicit = ledger.evaluate(contract, "querySource", (ctx) -> contract.querySource(ctx, sid));
+            assertEquals(0.2f, explicit.getScore().getReliability().floatValue());
+
+            ledger.submit(contract, "addReview", (ctx) -> contract.addReview(ctx, sid, "factChecker2", 0.5f));
+            Source rereviewed = ledger.evaluate(contract, "querySource", (ctx) -> contract.querySource(ctx, sid));
+            assertEquals(0.7f, rereviewed.getScore().getReliability().floatValue(), 1e-6f);
+            assertEquals(2, rereviewed.getStatistics().getCount());
+        }
+
+        @Test
+        public void refreshTheStoredScoreFromReviews() {
+            Source created = ledger.submit(contract, "createSource",
+                    (ctx) -> contract.createSource(ctx, "www.nasa.gov", "0.5", "0.5"));
+            String sid = created.getSid();
+            ledger.submit(contract, "addReview", (ctx) -> contract.addReview(ctx, sid, "factChecker1", 0.9f));
+            ledger.submit(contract, "updateSourceScore", (ctx) -> contract.updateSourceScore(ctx, sid, "0.2", "0.3"));
+
+            ledger.submit(contract, "refreshSourceScore", (ctx) -> contract.refreshSourceScore(ctx, sid));
+            Source derived = ledger.evaluate(contract, "querySource", (ctx) -> contract.querySource(ctx, sid));
+            assertEquals(0.9f, derived.getScore().getReliability().floatValue());
+            assertEquals(1, derived.getStatistics().getCount());
+        }
+
+        @Test
+        public void queryTheCurrentScoreOfHypotheses() {
+            HypothesisContract hypotheses = new HypothesisContract();
+            Hypothesis created = ledger.submit(hypotheses, "createHypothesis",
+                    (ctx) -> hypotheses.createHypothesis(ctx, "Canada has ten provinces", "en_CA"));
+            String hid = created.getHid();
+            ledger.submit(hypotheses, "addOrUpdateReview",
+                    (ctx) -> hypotheses.addOrUpdateReview(ctx, hid, "factChecker1", "0.9"));
+
+            Score score = ledger.evaluate(hypotheses, "queryHypothesisScore",
+                    (ctx) -> hypotheses.queryHypothesisScore(ctx, hid));
+            assertEquals(0.9f, score.getReliability().floatValue());
+        }
+
+        @Test
+        public void migrateLegacyRecordsWithTheirReviews() {
+            String hid = "HYPOTHESIS-2f1c-host";
+            put(hid, "{\"hid\":\"" + hid + "\",\"claim\":\"Canada has ten provinces\",\"locale\":\"en_CA\"," +
+                    "\"score\":{\"reliability\":0.5,\"confidence\":0.5},\"reviews\":{\"factChecker1\":0.9}," +
+                    "\"references\":{}}");
+            HypothesisContract hypotheses = new HypothesisContract();
+
+            String migrated = ledger.submit(hypotheses, "migrateLegacyHypotheses",
+                    (ctx) -> hypotheses.migrateLegacyHypotheses(ctx, "10"));
+            assertEquals("[\"" + hid + "\"]", migrated);
+            assertNull(ledger.getState(hid));
+
+            Hypothesis hypothesis = ledger.evaluate(hypotheses, "queryHypothesis",
+                    (ctx) -> hypotheses.queryHypothesis(ctx, hid));
+            assertEquals("Canada has ten provinces", hypothesis.getClaim());
+            assertEquals(0.9f, hypothesis.getReviews().get("factChecker1").floatValue());
+            assertEquals(0.9f, hypothesis.getScore().getReliability().floatValue());
+            assertEquals("[]", ledger.submit(hypotheses, "migrateLegacyHypotheses",
+                    (ctx) -> hypotheses.migrateLegacyHypotheses(ctx, "10")));
+        }
+
+        @Test
+        public void runRichQueriesWithTheDefaultStateFormat() throws IOException {
+            Source reliable = ledger.submit(contract, "createSource",
+                    (ctx) -> contract.createSource(ctx, "www.nasa.gov", "0.9", "0.8"));
+            ledger.submit(contract, "createSource", (ctx) -> contract.createSource(ctx, "www.blog.com", "0.3", "0.8"));
+
+            String page = ledger.evaluate(contract, "querySourcesByReliability",
+                    (ctx) -> contract.querySourcesByReliability(ctx, 0.5f, "10", "", "[\"sid\",\"name\"]"));
+            JsonNode results = mapper.readTree(page).get("results");
+            assertEquals(1, results.size());
+            assertEquals(reliable.getSid(), results.get(0).get("sid").asText());
+            assertEquals("www.nasa.gov", results.get(0).get("name").asText());
+        }
+
+        @Test
+        public void rejectWritesInEvaluateTransactions() {
+            Assertions.assertThrows(ChaincodeException.class, () -> ledger.evaluate(contract, "querySource",
+                    (ctx) -> contract.createSource(ctx, "www.nasa.gov", "0.5", "0.5")));
+        }
+    }
+}
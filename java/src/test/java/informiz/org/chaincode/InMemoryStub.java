@@ -0,0 +1,511 @@
+package informiz.org.chaincode;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link ChaincodeStub} of one transaction on an {@link InMemoryLedger}.
+ * <p>
+ * Like a peer, the stub reads the committed state only, and captures the transaction's read set (the version of
+ * every key and range it read) and write set (the last value written to every key, or a deletion). Range and
+ * partial-composite-key scans return keys in order, and paginated scans return the next key as their bookmark.
+ * Rich queries support a subset of CouchDB's selector syntax, see {@link JsonSelector}.
+ * Private data and chaincode-to-chaincode calls are not supported.
+ */
+public final class InMemoryStub implements ChaincodeStub {
+
+    private static final String MIN_KEY = "\u0001";
+
+    private static final String MAX_UNICODE_RUNE = "\udbff\udfff";
+
+    private final InMemoryLedger ledger;
+
+    private final String txId;
+
+    private final Instant timestamp;
+
+    private final String function;
+
+    private final List<String> parameters;
+
+    private final Map<String, Long> reads = new HashMap<>();
+
+    private final List<RangeRead> rangeReads = new ArrayList<>();
+
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+
+    private String eventName;
+
+    private byte[] eventPayload;
+
+    InMemoryStub(final InMemoryLedger ledger, final String txId, final Instant timestamp, final String function,
+                 final String... parameters) {
+        this.ledger = ledger;
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.function = function;
+        this.parameters = Arrays.asList(parameters);
+    }
+
+    /**
+     * The keys and versions read by a range scan, from its start key up to its end key or the first key it did
+     * not return
+     */
+    private static final class RangeRead {
+        private final String start;
+        private final String end;
+        private final Map<String, Long> versions;
+
+        private RangeRead(final String start, final String end, final Map<String, Long> versions) {
+            this.start = start;
+            this.end = end;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * @return the keys written by the transaction, with their last value, or null for a deleted key
+     */
+    public Map<String, byte[]> getWrites() {
+        return Collections.unmodifiableMap(writes);
+    }
+
+    /**
+     * @return the versions of the keys read by the transaction, 0 for a key that did not exist
+     */
+    public Map<String, Long> getReads() {
+        return Collections.unmodifiableMap(reads);
+    }
+
+    String getEventName() {
+        return eventName;
+    }
+
+    byte[] getEventPayload() {
+        return eventPayload;
+    }
+
+    /**
+     * @return true if no key or range read by the transaction was changed since it was read
+     */
+    boolean isValid() {
+        for (Map.Entry<String, Long> read : reads.entrySet()) {
+            if (version(ledger.read(read.getKey())) != read.getValue()) {
+                return false;
+            }
+        }
+        for (RangeRead range : rangeReads) {
+            if (!range.versions.equals(versions(ledger.range(range.start, range.end)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long version(final InMemoryLedger.Versioned versioned) {
+        return versioned == null ? 0 : versioned.version;
+    }
+
+    private static Map<String, Long> versions(final Map<String, InMemoryLedger.Versioned> entries) {
+        Map<String, Long> versions = new HashMap<>();
+        entries.forEach((key, versioned) -> versions.put(key, versioned.version));
+        return versions;
+    }
+
+    private static void validateKey(final String key) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key must not be null or empty");
+        }
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        List<byte[]> args = new ArrayList<>();
+        getStringArgs().forEach((arg) -> args.add(arg.getBytes(StandardCharsets.UTF_8)));
+        return args;
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        List<String> args = new ArrayList<>();
+        args.add(function);
+        args.addAll(parameters);
+        return args;
+    }
+
+    @Override
+    public String getFunction() {
+        return function;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public Chaincode.Response invokeChaincode(final String chaincodeName, final List<byte[]> args,
+                                              final String channel) {
+        throw new UnsupportedOperationException("invokeChaincode");
+    }
+
+    @Override
+    public byte[] getState(final String key) {
+        validateKey(key);
+        InMemoryLedger.Versioned versioned = ledger.read(key);
+        reads.putIfAbsent(key, version(versioned));
+        return versioned == null ? new byte[0] : versioned.value;
+    }
+
+    @Override
+    public String getStringState(final String key) {
+        return new String(getState(key), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(final String key) {
+        return null;
+    }
+
+    @Override
+    public void putState(final String key, final byte[] value) {
+        validateKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        writes.put(key, value);
+    }
+
+    @Override
+    public void putStringState(final String key, final String value) {
+        putState(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void setStateValidationParameter(final String key, final byte[] value) {
+        throw new UnsupportedOperationException("setStateValidationParameter");
+    }
+
+    @Override
+    public void delState(final String key) {
+        validateKey(key);
+        writes.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(final String startKey, final String endKey) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return scan(startKey.isEmpty() ? MIN_KEY : startKey, endKey.isEmpty() ? null : endKey, 0, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(final String startKey,
+                                                                                    final String endKey,
+                                                                                    final int pageSize,
+                                                                                    final String bookmark) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return scan(startKey.isEmpty() ? MIN_KEY : startKey, endKey.isEmpty() ? null : endKey, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.startsWith(CompositeKey.NAMESPACE)
+                ? CompositeKey.parseCompositeKey(compositeKey) : new CompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String objectType,
+                                                                       final String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final CompositeKey compositeKey) {
+        String prefix = compositeKey.toString();
+        return scan(prefix, prefix + MAX_UNICODE_RUNE, 0, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+            final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+        String prefix = compositeKey.toString();
+        return scan(prefix, prefix + MAX_UNICODE_RUNE, pageSize, bookmark);
+    }
+
+    /**
+     * Scan a range of keys, and add it to the read set
+     * @param start the first key, inclusive
+     * @param end the last key, exclusive, or null for no bound
+     * @param pageSize the maximal number of keys to return, or 0 for all the keys in the range
+     * @param bookmark the key to start from, or an empty string to start from the first key
+     * @return the keys, with the next key as the bookmark if the range has more keys
+     */
+    private Results scan(final String start, final String end, final int pageSize, final String bookmark) {
+        String from = bookmark == null || bookmark.isEmpty() ? start : bookmark;
+        List<KeyValue> page = new ArrayList<>();
+        Map<String, Long> versions = new HashMap<>();
+        String next = "";
+        for (Map.Entry<String, InMemoryLedger.Versioned> entry : ledger.range(from, end).entrySet()) {
+            if (pageSize > 0 && page.size() == pageSize) {
+                next = entry.getKey();
+                break;
+            }
+            page.add(new Entry(entry.getKey(), entry.getValue().value));
+            versions.put(entry.getKey(), entry.getValue().version);
+        }
+        rangeReads.add(new RangeRead(from, next.isEmpty() ? end : next, versions));
+        return new Results(page, next);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(final String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+        return getQueryResultWithPagination(query, 0, "");
+    }
+
+    /**
+     * Run a rich query over the committed JSON records, in key order. Rich queries are not added to the read set,
+     * as a peer does not re-validate them either.
+     */
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(final String query,
+                                                                                 final int pageSize,
+                                                                                 final String bookmark) {
+        JsonSelector selector = JsonSelector.parse(query);
+        String from = bookmark == null || bookmark.isEmpty() ? "" : bookmark;
+        List<KeyValue> page = new ArrayList<>();
+        String next = "";
+        for (Map.Entry<String, InMemoryLedger.Versioned> entry : ledger.range(from, null).entrySet()) {
+            byte[] selected = selector.select(entry.getValue().value);
+            if (selected == null) {
+                continue;
+            }
+            if (pageSize > 0 && page.size() == pageSize) {
+                next = entry.getKey();
+                break;
+            }
+            page.add(new Entry(entry.getKey(), selected));
+        }
+        return new Results(page, next);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+        List<KeyModification> history = ledger.history(key);
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return history.iterator();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    @Override
+    public byte[] getPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateData");
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataHash");
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+        throw new UnsupportedOperationException("getPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void putPrivateData(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("putPrivateData");
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(final String collection, final String key, final byte[] value) {
+        throw new UnsupportedOperationException("setPrivateDataValidationParameter");
+    }
+
+    @Override
+    public void delPrivateData(final String collection, final String key) {
+        throw new UnsupportedOperationException("delPrivateData");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(final String collection, final String startKey,
+                                                                final String endKey) {
+        throw new UnsupportedOperationException("getPrivateDataByRange");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final CompositeKey compositeKey) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(final String collection,
+                                                                              final String objectType,
+                                                                              final String... attributes) {
+        throw new UnsupportedOperationException("getPrivateDataByPartialCompositeKey");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(final String collection, final String query) {
+        throw new UnsupportedOperationException("getPrivateDataQueryResult");
+    }
+
+    /**
+     * Set the transaction's event. Like a peer, the stub keeps only the last event set by the transaction.
+     */
+    @Override
+    public void setEvent(final String name, final byte[] payload) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("event name must not be null or empty");
+        }
+        this.eventName = name;
+        this.eventPayload = payload;
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        if (eventName == null) {
+            return null;
+        }
+        return ChaincodeEvent.newBuilder().setEventName(eventName).setTxId(txId)
+                .setPayload(ByteString.copyFrom(eventPayload)).build();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return TestUtils.creator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public String getMspId() {
+        return TestUtils.MSP_ID;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s(%s)", txId, function,
+                parameters.stream().collect(Collectors.joining(", ")));
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        private Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class Results implements QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> entries;
+        private final String bookmark;
+
+        private Results(final List<KeyValue> entries, final String bookmark) {
+            this.entries = entries;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return entries.iterator();
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public ChaincodeShim.QueryResponseMetadata getMetadata() {
+            return ChaincodeShim.QueryResponseMetadata.newBuilder()
+                    .setFetchedRecordsCount(entries.size()).setBookmark(bookmark).build();
+        }
+    }
+}
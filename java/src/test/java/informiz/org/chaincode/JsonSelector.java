@@ -0,0 +1,220 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The subset of CouchDB's query syntax supported by {@link InMemoryStub}: a <code>selector</code> with implicit
+ * equality, the operators <code>$eq</code>, <code>$ne</code>, <code>$gt</code>, <code>$gte</code>, <code>$lt</code>,
+ * <code>$lte</code>, <code>$in</code>, <code>$nin</code> and <code>$exists</code>, the combinations
+ * <code>$and</code>, <code>$or</code> and <code>$not</code>, and dotted field paths; and a <code>fields</code>
+ * projection. As in CouchDB, a field's condition only matches documents that have the field, unless it is
+ * <code>$exists</code>. Other members of the query, e.g <code>use_index</code>, are ignored, and results are always
+ * in key order.
+ */
+final class JsonSelector {
+
+    private static ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonNode selector;
+
+    private final List<String> fields = new ArrayList<>();
+
+    private JsonSelector(final JsonNode selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * @param query a CouchDB query, in JSON
+     * @return the query's selector
+     * @throws IllegalArgumentException if the query is not a JSON object with a selector
+     */
+    static JsonSelector parse(final String query) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(query);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid query " + query, e);
+        }
+        if (node == null || !node.isObject() || !node.path("selector").isObject()) {
+            throw new IllegalArgumentException("A query must have a selector: " + query);
+        }
+        JsonSelector selector = new JsonSelector(node.get("selector"));
+        for (JsonNode field : node.path("fields")) {
+            selector.fields.add(field.asText());
+        }
+        return selector;
+    }
+
+    /**
+     * @param value a record's value
+     * @return the value, or its projected fields, if it is a JSON object matching the selector, otherwise null
+     */
+    byte[] select(final byte[] value) {
+        JsonNode doc;
+        try {
+            doc = mapper.readTree(value);
+        } catch (IOException e) {
+            return null;
+        }
+        if (doc == null || !doc.isObject() || !matches(selector, doc)) {
+            return null;
+        }
+        if (fields.isEmpty()) {
+            return value;
+        }
+        ObjectNode projected = mapper.createObjectNode();
+        for (String field : fields) {
+            JsonNode fieldValue = resolve(doc, field);
+            if (!fieldValue.isMissingNode()) {
+                ObjectNode parent = projected;
+                String[] path = field.split("\\.");
+                for (int i = 0; i < path.length - 1; i++) {
+                    parent = parent.has(path[i]) ? (ObjectNode) parent.get(path[i]) : parent.putObject(path[i]);
+                }
+                parent.set(path[path.length - 1], fieldValue);
+            }
+        }
+        try {
+            return mapper.writeValueAsBytes(projected);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean matches(final JsonNode selector, final JsonNode doc) {
+        Iterator<Map.Entry<String, JsonNode>> conditions = selector.fields();
+        while (conditions.hasNext()) {
+            Map.Entry<String, JsonNode> condition = conditions.next();
+            if (!matches(condition.getKey(), condition.getValue(), doc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(final String field, final JsonNode condition, final JsonNode doc) {
+        switch (field) {
+            case "$and":
+                for (JsonNode selector : condition) {
+                    if (!matches(selector, doc)) {
+                        return false;
+                    }
+                }
+                return true;
+            case "$or":
+                for (JsonNode selector : condition) {
+                    if (matches(selector, doc)) {
+                        return true;
+                    }
+                }
+                return false;
+            case "$not":
+                return !matches(condition, doc);
+            default:
+                return satisfies(resolve(doc, field), condition);
+        }
+    }
+
+    private static boolean satisfies(final JsonNode value, final JsonNode condition) {
+        if (!isOperators(condition)) {
+            return equal(value, condition);
+        }
+        Iterator<Map.Entry<String, JsonNode>> operators = condition.fields();
+        while (operators.hasNext()) {
+            Map.Entry<String, JsonNode> operator = operators.next();
+            if (!apply(operator.getKey(), value, operator.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean apply(final String operator, final JsonNode value, final JsonNode operand) {
+        if (operator.equals("$exists")) {
+            return value.isMissingNode() != operand.asBoolean();
+        }
+        if (value.isMissingNode()) {
+            return false;
+        }
+        Integer order = compare(value, operand);
+        switch (operator) {
+            case "$eq":
+                return equal(value, operand);
+            case "$ne":
+                return !equal(value, operand);
+            case "$gt":
+                return order != null && order > 0;
+            case "$gte":
+                return order != null && order >= 0;
+            case "$lt":
+                return order != null && order < 0;
+            case "$lte":
+                return order != null && order <= 0;
+            case "$in":
+                return contains(operand, value);
+            case "$nin":
+                return !contains(operand, value);
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + operator);
+        }
+    }
+
+    private static boolean isOperators(final JsonNode condition) {
+        if (!condition.isObject() || condition.size() == 0) {
+            return false;
+        }
+        Iterator<String> names = condition.fieldNames();
+        while (names.hasNext()) {
+            if (!names.next().startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final JsonNode values, final JsonNode value) {
+        for (JsonNode candidate : values) {
+            if (equal(value, candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(final JsonNode value, final JsonNode operand) {
+        Integer order = compare(value, operand);
+        return order != null ? order == 0 : value.equals(operand);
+    }
+
+    /**
+     * @return the order of two numbers, strings or booleans, or null if the values are not comparable
+     */
+    private static Integer compare(final JsonNode value, final JsonNode operand) {
+        if (value.isNumber() && operand.isNumber()) {
+            return Double.compare(value.asDouble(), operand.asDouble());
+        }
+        if (value.isTextual() && operand.isTextual()) {
+            return Integer.signum(value.asText().compareTo(operand.asText()));
+        }
+        if (value.isBoolean() && operand.isBoolean()) {
+            return Boolean.compare(value.asBoolean(), operand.asBoolean());
+        }
+        return null;
+    }
+
+    private static JsonNode resolve(final JsonNode doc, final String field) {
+        JsonNode node = doc;
+        for (String name : field.split("\\.")) {
+            node = node.path(name);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,60 @@
+package informiz.org.chaincode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class MultiGetTest {
+
+    @Nested
+    class Parsing {
+
+        @Test
+        public void whenIdsAreValid() {
+            assertEquals(Arrays.asList("a", "b"), new ArrayList<>(MultiGet.parseIds("[\"a\", \"b\", \"a\"]")));
+        }
+
+        @Test
+        public void whenIdsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.parseIds("a"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.parseIds("[]"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.parseIds("[\"a\", 1]"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.parseIds("[\"\"]"));
+        }
+
+        @Test
+        public void whenIdsAreTooMany() {
+            String ids = "[" + String.join(",", Collections.nCopies(MultiGet.MAX_SIZE + 1, "\"a\"")) + "]";
+            Assertions.assertThrows(IllegalArgumentException.class, () -> MultiGet.parseIds(ids));
+        }
+    }
+
+    @Test
+    public void separatesFoundAndMissing() throws IOException {
+        List<String> fetched = new ArrayList<>();
+        String json = MultiGet.fetch("[\"a\", \"missing\", \"b\", \"a\"]", (id) -> {
+            fetched.add(id);
+            return id.equals("missing") ? null : id.toUpperCase();
+        });
+
+        JsonNode result = new ObjectMapper().readTree(json);
+        assertEquals(Arrays.asList("a", "missing", "b"), fetched);
+        assertEquals("A", result.get("results").get(0).asText());
+        assertEquals("B", result.get("results").get(1).asText());
+        assertEquals(1, result.get("missing").size());
+        assertEquals("missing", result.get("missing").get(0).asText());
+    }
+}
@@ -1,38 +1,49 @@
 package informiz.org.chaincode;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import informiz.org.chaincode.model.ContractType;
 import informiz.org.chaincode.model.ReferenceText;
-import informiz.org.chaincode.model.PaginatedResults;
-import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import mockit.*;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RefTextContractTest {
 
-    @Mocked
-    Context ctx;
-
     @Mocked
     ChaincodeStub stub;
 
+    Context ctx;
+
     @Tested
     ReferenceTextContract contract = new ReferenceTextContract();
 
@@ -41,19 +52,29 @@ public class RefTextContractTest {
             "https://www.canada.ca/en/intergovernmental-affairs/services/provinces-territories.html",
             "source-1", Locale.CANADA);
 
+    static String textKey = StateKeys.entityKey(ContractType.REF_TEXT, text.getTid());
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    static Instant txTime = Instant.ofEpochSecond(1600000000L);
+
     static String textJson;
 
+    static byte[] textState;
+
+    static byte[] reviewState;
+
     @BeforeAll
-    private static void prepareTest() throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private static void prepareTest() throws IOException {
         textJson = mapper.writeValueAsString(text);
-        // mock the creation of UUIDs to always return the test-texte's id
-        new MockUp<Utils>() {
-            @Mock
-            public String createUuid(ContractType contractType) {
-                return text.getTid();
-            }
-        };
+        textState = StateCodec.getDefault().encode(text);
+        reviewState = StateCodec.getDefault().encode(0.96f);
+    }
+
+    @BeforeEach
+    public void createContext() {
+        new Expectations() { { stub.getCreator(); result = TestUtils.creator(); } };
+        ctx = contract.createContext(stub);
     }
 
     @Nested
@@ -65,24 +86,121 @@ public class RefTextContractTest {
          */
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
             ReferenceText created = contract.createReferenceText(ctx, text.getText(), text.getSid(),
                     text.getLink(), text.getLocale().toString());
-            assertTrue(text.equals(created));
+            assertEquals(ContractType.REF_TEXT + "-tx1-0", created.getTid()); // ids are generated from the transaction id
         }
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
             ReferenceText created = contract.createReferenceText(ctx, text.getText(), text.getSid(),
                     text.getLink(), text.getLocale().toString());
-            assertTrue(text.equals(created)); // ReferenceText's 'equals' method only considers text id
+            assertEquals(ContractType.REF_TEXT + "-tx1-0", created.getTid()); // ids are generated from the transaction id
             assertEquals(text.getText(), created.getText());
             assertEquals(text.getSid(), created.getSid());
             assertEquals(text.getLink(), created.getLink());
             assertTrue(text.getScore().equals(created.getScore()));
             assertEquals(text.getLocale(), created.getLocale());
             assertEquals(text.getReviews(), text.getReviews());
+
+            new Verifications() { { stub.putState(StateIndex.SOURCE_TEXTS.key(text.getSid(), created.getTid()), (byte[]) any); } };
+        }
+    }
+
+    @Nested
+    class InvokeCreateReferenceTextBatchTransaction {
+
+        @Test
+        public void publishesEveryCreatedReferenceText() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
+            contract.createReferenceTextBatch(ctx,
+                    "[{\"text\": \"text-1\", \"sid\": \"source-1\", \"locale\": \"en_US\"}," +
+                    " {\"text\": \"text-2\", \"sid\": \"source-1\", \"locale\": \"en_US\"}]");
+            contract.afterTransaction(ctx, null);
+
+            List<byte[]> payloads = new ArrayList<>();
+            new Verifications() { { stub.setEvent(ChangeEvents.EVENT_NAME, withCapture(payloads)); times = 1; } };
+            JsonNode changes = mapper.readTree(payloads.get(0)).get("changes");
+            assertEquals(2, changes.size());
+            assertEquals(ContractType.REF_TEXT + "-tx1-0", changes.get(0).get("id").asText());
+            assertEquals(ContractType.REF_TEXT + "-tx1-1", changes.get(1).get("id").asText());
+            assertEquals("CREATED", changes.get(1).get("kind").asText());
+        }
+
+        @Test
+        public void whenBatchIsValid() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; }
+                { stub.getTxTimestamp(); result = txTime; } };
+            String ids = contract.createReferenceTextBatch(ctx,
+                    "[{\"text\": \"text-1\", \"sid\": \"source-1\", \"link\": \"link-1\", \"locale\": \"en_US\"}," +
+                    " {\"text\": \"text-2\", \"sid\": \"source-1\", \"locale\": \"en_US\"}]");
+
+            JsonNode created = mapper.readTree(ids);
+            assertEquals(2, created.size());
+            assertEquals(ContractType.REF_TEXT + "-tx1-1", created.get(1).asText());
+
+            contract.afterTransaction(ctx, ids);
+            new Verifications() {
+                { stub.putState(StateKeys.entityKey(ContractType.REF_TEXT, ContractType.REF_TEXT + "-tx1-0"), (byte[]) any); }
+                { stub.putState(StateIndex.SOURCE_TEXTS.key("source-1", ContractType.REF_TEXT + "-tx1-1"), (byte[]) any); }
+            };
+        }
+
+        @Test
+        public void whenAnItemIsInvalid() {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.createReferenceTextBatch(ctx,
+                    "[{\"text\": \"text-1\", \"sid\": \"source-1\", \"locale\": \"not a locale\"}]"));
+
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+    }
+
+    @Nested
+    class InvokeGetReferenceTextsTransaction {
+
+        @Test
+        public void whenSomeReferenceTextsExist() throws IOException {
+            String missingKey = StateKeys.entityKey(ContractType.REF_TEXT, "no-such-text");
+            new Expectations() {
+                { stub.getState(textKey); result = textState; }
+                { stub.getState(missingKey); result = new byte[0]; }
+            };
+
+            JsonNode result = mapper.readTree(contract.getReferenceTexts(ctx,
+                    String.format("[\"%s\", \"no-such-text\"]", text.getTid())));
+            assertEquals(1, result.get("results").size());
+            assertEquals(text.getTid(), result.get("results").get(0).get("tid").asText());
+            assertEquals("no-such-text", result.get("missing").get(0).asText());
+        }
+
+        @Test
+        public void whenIdsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.getReferenceTexts(ctx, "[]"));
+        }
+    }
+
+    @Nested
+    class InvokeQueryReferenceTextScoreTransaction {
+
+        @Test
+        public void whenReferenceTextExists() {
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
+
+            assertEquals(text.getScore(), contract.queryReferenceTextScore(ctx, text.getTid()));
+        }
+
+        @Test
+        public void whenReferenceTextDoesNotExist() {
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class,
+                    () -> contract.queryReferenceTextScore(ctx, text.getTid()));
         }
     }
 
@@ -91,16 +209,42 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
 
             ReferenceText found = contract.queryReferenceText(ctx, text.getTid());
             assertTrue(text.equals(found));
         }
 
+        @Test
+        public void whenReferenceTextIsStoredAsJson() {
+            new Expectations() { { stub.getState(textKey);
+                result = textJson.getBytes(StandardCharsets.UTF_8); }};
+
+            ReferenceText found = contract.queryReferenceText(ctx, text.getTid());
+            assertTrue(text.equals(found));
+        }
+
+        @Test
+        public void whenReferenceTextHasReviews() {
+            Map<String, String> reviews = new HashMap<>();
+            reviews.put(StateKeys.reviewKey(text.getTid(), "factChecker1"), "0.96");
+            new Expectations() {
+                { stub.getState(textKey); result = textState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any);
+                    result = new TestUtils.MockResultsIterator(reviews);
+                    result = new TestUtils.MockResultsIterator(new HashMap<>()); }
+            };
+
+            ReferenceText found = contract.queryReferenceText(ctx, text.getTid());
+            assertEquals(1, found.getReviews().size());
+            assertEquals(0.96f, found.getReviews().get("factChecker1").floatValue());
+            assertEquals(text.getScore(), found.getScore());
+        }
+
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () -> contract.queryReferenceText(ctx, text.getTid()));
         }
     }
@@ -122,6 +266,24 @@ public class RefTextContractTest {
             runTest(resList, "blah", 4);
         }
 
+        @Test
+        void whenFieldsAreProjected() throws IOException {
+            List<KeyValue> resList = Arrays.asList(new TestUtils.MockKeyValue("texte-1", textJson));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 1; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = resList.iterator(); minTimes = 0;}
+            };
+
+            JsonNode record = mapper.readTree(contract.queryAllReferenceTexts(ctx, "100", "", "[\"tid\",\"score\"]"))
+                    .get("results").get(0);
+            assertEquals(2, record.size());
+            assertEquals(text.getTid(), record.get("tid").asText());
+            assertEquals(text.getScore().getReliability().floatValue(), record.get("score").get("reliability").floatValue());
+        }
+
         @Test
         void whenNoReferenceTextExist() {
             List<KeyValue> resList = new ArrayList<>();
@@ -130,17 +292,50 @@ public class RefTextContractTest {
 
         private void runTest(List<KeyValue> resList, String bookmark, int numReferenceText) {
             new Expectations() {
-                { ctx.getStub(); result = stub; }
-                { stub.getStateByRangeWithPagination("", "", 100, ""); result = states; }
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
                 { metadata.getFetchedRecordsCount(); result = numReferenceText; }
                 { metadata.getBookmark(); result = bookmark;}
                 { states.getMetadata(); result = metadata; }
                 { states.iterator(); result = resList.iterator(); minTimes = 0;}
             };
 
-            PaginatedResults result = contract.queryAllReferenceTexts(ctx, "100", "");
-            assertEquals(bookmark, result.getBookmark());
-            assertEquals(numReferenceText, result.getResults().size());
+            JsonNode result = null;
+            try {
+                result = mapper.readTree(contract.queryAllReferenceTexts(ctx, "100", "", ""));
+            } catch (IOException e) {
+                fail(e);
+            }
+            assertEquals(bookmark, result.get("bookmark").asText());
+            assertEquals(numReferenceText, result.get("results").size());
+            result.get("results").forEach(record -> assertTrue(record.isObject()));
+        }
+    }
+
+    @Nested
+    class InvokeQueryReferenceTextsBySourceTransaction {
+
+        @Test
+        void whenSourceHasTexts() {
+            List<KeyValue> entries = Arrays.asList(
+                    new TestUtils.MockKeyValue(StateIndex.SOURCE_TEXTS.key(text.getSid(), text.getTid()), "\u0000"));
+            new Expectations() {
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 1; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes = 0;}
+                { stub.getState(textKey); result = textState; }
+            };
+
+            JsonNode result = null;
+            try {
+                result = mapper.readTree(contract.queryReferenceTextsBySource(ctx, text.getSid(), "100", ""));
+            } catch (IOException e) {
+                fail(e);
+            }
+            assertEquals(1, result.get("results").size());
+            assertEquals(text.getTid(), result.get("results").get(0).get("tid").asText());
+            assertEquals(text.getSid(), result.get("results").get(0).get("sid").asText());
         }
     }
 
@@ -149,8 +344,8 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
 
             ReferenceText updated = contract.updateReferenceTextScore(ctx, text.getTid(), "0.95", "0.97");
             assertEquals(0.95f, updated.getScore().getReliability().floatValue());
@@ -159,7 +354,7 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateReferenceTextScore(ctx, text.getTid(), "0.95", "0.97"));
         }
@@ -170,16 +365,34 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
 
             ReferenceText updated = contract.updateReferenceTextSource(ctx, text.getTid(), "another-src-id");
             assertEquals("another-src-id", updated.getSid());
+
+            new Verifications() {
+                { stub.delState(StateIndex.SOURCE_TEXTS.key(text.getSid(), text.getTid())); }
+                { stub.putState(StateIndex.SOURCE_TEXTS.key("another-src-id", text.getTid()), (byte[]) any); }
+            };
+        }
+
+        @Test
+        public void whenSourceIsUnchanged() {
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
+
+            contract.updateReferenceTextSource(ctx, text.getTid(), text.getSid());
+
+            new Verifications() {
+                { stub.delState(anyString); times = 0; }
+                { stub.putState(StateIndex.SOURCE_TEXTS.key(text.getSid(), text.getTid()), (byte[]) any); times = 0; }
+            };
         }
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateReferenceTextSource(ctx, text.getTid(), "another-src-id"));
         }
@@ -190,8 +403,8 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
 
             ReferenceText updated = contract.updateReferenceTextLink(ctx, text.getTid(), "www.server.com");
             assertEquals("www.server.com", updated.getLink());
@@ -199,7 +412,7 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateReferenceTextLink(ctx, text.getTid(), "www.server.com"));
         }
@@ -210,8 +423,8 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+            new Expectations() { { stub.getState(textKey);
+                result = textState; }};
 
             ReferenceText updated = contract.updateReferenceTextLocale(ctx, text.getTid(), Locale.CANADA_FRENCH.toString());
             assertEquals(Locale.CANADA_FRENCH, updated.getLocale());
@@ -219,33 +432,91 @@ public class RefTextContractTest {
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateReferenceTextScore(ctx, text.getTid(), "0.95", "0.97"));
         }
     }
 
+    @Nested
+    class InvokeRefreshScoreTransaction {
+
+        @Test
+        public void whenReferenceTextHasPendingReviews() throws JsonProcessingException {
+            String deltaKey = StateKeys.statisticsKey(text.getTid(), "tx1", "factChecker1");
+            Map<String, String> pending = new HashMap<>();
+            pending.put(deltaKey, mapper.writeValueAsString(ReviewStatistics.change(null, 0.9f)));
+            new Expectations() {
+                { stub.getState(textKey); result = textState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any); result = new TestUtils.MockResultsIterator(pending); }
+            };
+
+            ReferenceText updated = contract.refreshReferenceTextScore(ctx, text.getTid());
+            assertEquals(0.9f, updated.getScore().getReliability().floatValue());
+            assertEquals(1, updated.getStatistics().getCount());
+
+            new Verifications() { { stub.delState(deltaKey); } };
+        }
+
+        @Test
+        public void whenReferenceTextDoesNotExist() {
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.refreshReferenceTextScore(ctx, text.getTid()));
+        }
+    }
+
     @Nested
     class InvokeAddRemoveReviewTransaction {
 
+        String reviewKey = StateKeys.reviewKey(text.getTid(), "factChecker1");
+
         @Test
-        public void whenReferenceTextExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid());
-                result = textJson; }};
+        public void whenReviewIsAdded() {
+            new Expectations() {
+                { stub.getState(textKey); result = textState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
 
-            ReferenceText updated = contract.addOrUpdateReview(ctx, text.getTid(), "factChecker1", "0.96");
-            assertEquals(1, updated.getReviews().size());
-            assertEquals(0.96f, updated.getReviews().get("factChecker1").floatValue());
+            Review review = contract.addOrUpdateReview(ctx, text.getTid(), "factChecker1", "0.96");
+            assertEquals(0.96f, review.getReliability().floatValue());
+            assertEquals(ContractType.REF_TEXT.name(), review.getEntityType());
 
-            updated = contract.removeReview(ctx, text.getTid(), "factChecker1");
-            assertEquals(0, updated.getReviews().size());
+            new Verifications() {
+                { stub.putState(reviewKey, reviewState); }
+                { stub.putState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.REF_TEXT.name(), text.getTid()), (byte[]) any); }
+                { stub.putState(textKey, (byte[]) any); times = 0; }
+            };
         }
 
         @Test
         public void whenReferenceTextDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(text.getTid()); result = ""; } };
+            new Expectations() { { stub.getState(textKey); result = new byte[0]; } };
+
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.addOrUpdateReview(ctx, text.getTid(), "factChecker1", "0.96"));
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenReviewExists() {
+            new Expectations() {
+                { stub.getState(reviewKey); result = reviewState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
+
+            Review removed = contract.removeReview(ctx, text.getTid(), "factChecker1");
+            assertEquals(0.96f, removed.getReliability().floatValue());
+
+            new Verifications() {
+                { stub.delState(reviewKey); }
+                { stub.delState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.REF_TEXT.name(), text.getTid())); }
+            };
+        }
+
+        @Test
+        public void whenReviewDoesNotExist() {
+            new Expectations() { { stub.getState(reviewKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
-                    contract.addOrUpdateReview(ctx, text.getTid(), "factChecker1", "0.96"));
+                    contract.removeReview(ctx, text.getTid(), "factChecker1"));
         }
     }
 }
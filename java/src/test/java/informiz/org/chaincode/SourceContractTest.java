@@ -1,27 +1,38 @@
 package informiz.org.chaincode;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import informiz.org.chaincode.model.ContractType;
-import informiz.org.chaincode.model.PaginatedResults;
 import informiz.org.chaincode.model.Source;
-import informiz.org.chaincode.model.Utils;
+import informiz.org.chaincode.model.Review;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.state.ChangeEvents;
+import informiz.org.chaincode.state.ScoreIndex;
+import informiz.org.chaincode.state.StateCodec;
+import informiz.org.chaincode.state.StateIndex;
+import informiz.org.chaincode.state.StateKeys;
 import mockit.*;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -29,30 +40,37 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 public class SourceContractTest {
 
-    @Mocked
-    Context ctx;
-
     @Mocked
     ChaincodeStub stub;
 
+    Context ctx;
+
     @Tested
     SourceContract contract = new SourceContract();
 
     static Source src = Source.createSource("www.nasa.com", 0.98f, 0.99f);
 
+    static String srcKey = StateKeys.entityKey(ContractType.SOURCE, src.getSid());
+
+    static ObjectMapper mapper = new ObjectMapper();
+
     static String srcJson;
 
+    static byte[] srcState;
+
+    static byte[] reviewState;
+
     @BeforeAll
-    private static void prepareTest() throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private static void prepareTest() throws IOException {
         srcJson = mapper.writeValueAsString(src);
-        // mock the creation of UUIDs to always return the test-source's id
-        new MockUp<Utils>() {
-            @Mock
-            public String createUuid(ContractType contractType) {
-                return src.getSid();
-            }
-        };
+        srcState = StateCodec.getDefault().encode(src);
+        reviewState = StateCodec.getDefault().encode(0.96f);
+    }
+
+    @BeforeEach
+    public void createContext() {
+        new Expectations() { { stub.getCreator(); result = TestUtils.creator(); } };
+        ctx = contract.createContext(stub);
     }
 
     @Nested
@@ -64,39 +82,113 @@ public class SourceContractTest {
          */
         @Test
         public void whenSourceExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
             Source created = contract.createSource(ctx, src.getName(),
                     String.valueOf(src.getScore().getReliability()), String.valueOf(src.getScore().getConfidence()));
-            assertTrue(src.equals(created));
+            assertEquals(ContractType.SOURCE + "-tx1-0", created.getSid()); // ids are generated from the transaction id
         }
 
         @Test
         public void whenSourceDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } };
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
             Source created = contract.createSource(ctx, src.getName(),
                     String.valueOf(src.getScore().getReliability()), String.valueOf(src.getScore().getConfidence()));
-            assertTrue(src.equals(created)); // Source's 'equals' method only considers source id
+            assertEquals(ContractType.SOURCE + "-tx1-0", created.getSid()); // ids are generated from the transaction id
             assertTrue(src.getScore().equals(created.getScore()));
             assertEquals(src.getName(), created.getName());
             assertEquals(src.getReviews(), src.getReviews());
         }
     }
 
+    @Nested
+    class InvokeCreateSourceBatchTransaction {
+
+        @Test
+        public void whenBatchIsValid() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            String ids = contract.createSourceBatch(ctx,
+                    "[{\"name\": \"www.nasa.gov\", \"reliability\": \"0.9\", \"confidence\": \"0.8\"}]");
+
+            assertEquals(ContractType.SOURCE + "-tx1-0", mapper.readTree(ids).get(0).asText());
+        }
+
+        @Test
+        public void whenAnItemIsInvalid() {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.createSourceBatch(ctx,
+                    "[{\"name\": \"www.nasa.gov\", \"reliability\": \"high\", \"confidence\": \"0.8\"}]"));
+
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+    }
+
+    @Nested
+    class InvokeGetSourcesTransaction {
+
+        @Test
+        public void whenSomeSourcesExist() throws IOException {
+            String missingKey = StateKeys.entityKey(ContractType.SOURCE, "no-such-source");
+            new Expectations() {
+                { stub.getState(srcKey); result = srcState; }
+                { stub.getState(missingKey); result = new byte[0]; }
+            };
+
+            JsonNode result = mapper.readTree(contract.getSources(ctx,
+                    String.format("[\"%s\", \"no-such-source\"]", src.getSid())));
+            assertEquals(1, result.get("results").size());
+            assertEquals(src.getSid(), result.get("results").get(0).get("sid").asText());
+            assertEquals("no-such-source", result.get("missing").get(0).asText());
+        }
+
+        @Test
+        public void whenIdsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> contract.getSources(ctx, "[]"));
+        }
+    }
+
     @Nested
     class InvokeQuerySourceTransaction {
 
         @Test
         public void whenSourceExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid());
-                result = srcJson; }};
+            new Expectations() { { stub.getState(srcKey);
+                result = srcState; }};
 
             Source found = contract.querySource(ctx, src.getSid());
             assertTrue(src.equals(found));
+
+            new Verifications() { { stub.putState(srcKey, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenSourceIsStoredAsJson() {
+            new Expectations() { { stub.getState(srcKey);
+                result = srcJson.getBytes(StandardCharsets.UTF_8); }};
+
+            Source found = contract.querySource(ctx, src.getSid());
+            assertTrue(src.equals(found));
+        }
+
+        @Test
+        public void whenSourceHasReviews() {
+            Map<String, String> reviews = new HashMap<>();
+            reviews.put(StateKeys.reviewKey(src.getSid(), "factChecker1"), "0.96");
+            new Expectations() {
+                { stub.getState(srcKey); result = srcState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any);
+                    result = new TestUtils.MockResultsIterator(reviews);
+                    result = new TestUtils.MockResultsIterator(new HashMap<>()); }
+            };
+
+            Source found = contract.querySource(ctx, src.getSid());
+            assertEquals(1, found.getReviews().size());
+            assertEquals(0.96f, found.getReviews().get("factChecker1").floatValue());
+            assertEquals(src.getScore(), found.getScore());
         }
 
         @Test
         public void whenSourceDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid()); result = ""; } };
+            new Expectations() { { stub.getState(srcKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () -> contract.querySource(ctx, src.getSid()));
         }
     }
@@ -126,23 +218,22 @@ public class SourceContractTest {
 
         private void runTest(List<KeyValue> resList, String bookmark, int numSources) {
             new Expectations() {
-                { ctx.getStub(); result = stub; }
-                { stub.getStateByRangeWithPagination("", "", 100, ""); result = states; }
+                { stub.getStateByPartialCompositeKeyWithPagination((CompositeKey) any, 100, ""); result = states; }
                 { metadata.getFetchedRecordsCount(); result = numSources; }
                 { metadata.getBookmark(); result = bookmark;}
                 { states.getMetadata(); result = metadata; }
                 { states.iterator(); result = resList.iterator(); minTimes = 0;}
             };
             ObjectMapper mapper = new ObjectMapper();
-            PaginatedResults result = null;
+            JsonNode result = null;
             try {
-                result = mapper.readValue(contract.queryAllSources(ctx, "100", ""),
-                        PaginatedResults.class);
+                result = mapper.readTree(contract.queryAllSources(ctx, "100", "", ""));
             } catch (IOException e) {
                 fail(e);
             }
-            assertEquals(bookmark, result.getBookmark());
-            assertEquals(numSources, result.getResults().size());
+            assertEquals(bookmark, result.get("bookmark").asText());
+            assertEquals(numSources, result.get("results").size());
+            result.get("results").forEach(record -> assertTrue(record.isObject()));
         }
     }
 
@@ -151,8 +242,8 @@ public class SourceContractTest {
 
         @Test
         public void whenSourceExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid());
-                result = srcJson; }};
+            new Expectations() { { stub.getState(srcKey);
+                result = srcState; }};
 
             Source updated = contract.updateSourceName(ctx, src.getSid(), "www.nasa.gov");
             assertEquals("www.nasa.gov", updated.getName());
@@ -160,54 +251,210 @@ public class SourceContractTest {
 
         @Test
         public void whenSourceDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid()); result = ""; } };
+            new Expectations() { { stub.getState(srcKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateSourceName(ctx, src.getSid(), "www.nasa.gov"));
         }
     }
 
+    @Nested
+    class InvokeQuerySourcesByScoreRangeTransaction {
+
+        @Test
+        void whenSourcesAreInRange() throws IOException {
+            List<KeyValue> entries = Arrays.asList(new TestUtils.MockKeyValue(
+                    ScoreIndex.keys(ContractType.SOURCE, src.getSid(), src.getScore()).get(0), "\u0000"));
+            new Expectations() {
+                { stub.getStateByRangeWithPagination(anyString, anyString, 20, ""); result = states; }
+                { metadata.getFetchedRecordsCount(); result = 1; }
+                { metadata.getBookmark(); result = "";}
+                { states.getMetadata(); result = metadata; }
+                { states.iterator(); result = entries.iterator(); minTimes = 0;}
+                { stub.getState(srcKey); result = srcState; }
+            };
+
+            JsonNode result = mapper.readTree(contract.querySourcesByScoreRange(ctx, "reliability", "0.3", "", "20", ""));
+            assertEquals(1, result.get("results").size());
+            assertEquals(src.getSid(), result.get("results").get(0).get("sid").asText());
+        }
+
+        @Test
+        void whenOrderIsUnknown() {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> contract.querySourcesByScoreRange(ctx, "popularity", "", "", "20", ""));
+        }
+    }
+
     @Nested
     class InvokeUpdateScoreTransaction {
 
         @Test
         public void whenSourceExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid());
-                result = srcJson; }};
+            new Expectations() { { stub.getState(srcKey);
+                result = srcState; }};
 
             Source updated = contract.updateSourceScore(ctx, src.getSid(), "0.95", "0.97");
             assertEquals(0.95f, updated.getScore().getReliability().floatValue());
             assertEquals(0.97f, updated.getScore().getConfidence().floatValue());
         }
 
+        @Test
+        public void movesTheScoreIndexEntries() {
+            new Expectations() { { stub.getState(srcKey);
+                result = srcState; }};
+            List<String> previous = ScoreIndex.keys(ContractType.SOURCE, src.getSid(), src.getScore());
+
+            Source updated = contract.updateSourceScore(ctx, src.getSid(), "0.95", "0.97");
+            List<String> current = ScoreIndex.keys(ContractType.SOURCE, src.getSid(), updated.getScore());
+
+            new Verifications() {
+                { stub.delState(previous.get(0)); }
+                { stub.delState(previous.get(1)); }
+                { stub.putState(current.get(0), (byte[]) any); }
+                { stub.putState(current.get(1), (byte[]) any); }
+            };
+        }
+
         @Test
         public void whenSourceDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid()); result = ""; } };
+            new Expectations() { { stub.getState(srcKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
                     contract.updateSourceScore(ctx, src.getSid(), "0.95", "0.97"));
         }
     }
 
+    @Nested
+    class InvokeRefreshScoreTransaction {
+
+        @Test
+        public void whenSourceHasPendingReviews() throws JsonProcessingException {
+            String deltaKey = StateKeys.statisticsKey(src.getSid(), "tx1", "factChecker1");
+            Map<String, String> pending = new HashMap<>();
+            pending.put(deltaKey, mapper.writeValueAsString(ReviewStatistics.change(null, 0.9f)));
+            new Expectations() {
+                { stub.getState(srcKey); result = srcState; }
+                { stub.getStateByPartialCompositeKey((CompositeKey) any); result = new TestUtils.MockResultsIterator(pending); }
+            };
+
+            Source updated = contract.refreshSourceScore(ctx, src.getSid());
+            assertEquals(0.9f, updated.getScore().getReliability().floatValue());
+            assertEquals(1, updated.getStatistics().getCount());
+
+            new Verifications() { { stub.delState(deltaKey); } };
+        }
+
+        @Test
+        public void whenSourceDoesNotExist() {
+            new Expectations() { { stub.getState(srcKey); result = new byte[0]; } };
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.refreshSourceScore(ctx, src.getSid()));
+        }
+    }
+
+    @Nested
+    class TransactionContext {
+
+        @Test
+        public void readsAndWritesEachSourceOnce() {
+            new Expectations() { { stub.getState(srcKey); result = srcState; } };
+
+            contract.updateSourceName(ctx, src.getSid(), "www.nasa.gov");
+            Source updated = contract.updateSourceScore(ctx, src.getSid(), "0.95", "0.97");
+            assertEquals("www.nasa.gov", updated.getName());
+
+            new Verifications() { { stub.putState(srcKey, (byte[]) any); times = 0; } };
+
+            contract.afterTransaction(ctx, updated);
+
+            new Verifications() {
+                { stub.getState(srcKey); times = 1; }
+                { stub.putState(srcKey, (byte[]) any); times = 1; }
+            };
+        }
+
+        @Test
+        public void generatesUniqueIdsAcrossCalls() throws IOException {
+            new Expectations() { { stub.getTxId(); result = "tx1"; } };
+
+            Source created = contract.createSource(ctx, "www.nasa.gov", "0.5", "0.5");
+            String ids = contract.createSourceBatch(ctx,
+                    "[{\"name\": \"www.esa.int\", \"reliability\": \"0.9\", \"confidence\": \"0.8\"}]");
+
+            assertEquals(ContractType.SOURCE + "-tx1-0", created.getSid());
+            assertEquals(ContractType.SOURCE + "-tx1-1", mapper.readTree(ids).get(0).asText());
+        }
+
+        @Test
+        public void publishesOneEventPerTransaction() throws IOException {
+            new Expectations() { { stub.getState(srcKey); result = srcState; } };
+
+            contract.updateSourceScore(ctx, src.getSid(), "0.95", "0.97");
+            contract.addReview(ctx, src.getSid(), "factChecker1", 0.8f);
+            new Verifications() { { stub.setEvent(anyString, (byte[]) any); times = 0; } };
+
+            contract.afterTransaction(ctx, null);
+
+            List<byte[]> payloads = new ArrayList<>();
+            new Verifications() { { stub.setEvent(ChangeEvents.EVENT_NAME, withCapture(payloads)); times = 1; } };
+            JsonNode changes = mapper.readTree(payloads.get(0)).get("changes");
+            assertEquals(1, changes.size());
+            assertEquals(src.getSid(), changes.get(0).get("id").asText());
+            assertEquals("UPDATED", changes.get(0).get("kind").asText());
+            assertEquals(0.95f, changes.get(0).get("reliability").floatValue());
+        }
+    }
+
     @Nested
     class InvokeAddRemoveReviewTransaction {
 
+        String reviewKey = StateKeys.reviewKey(src.getSid(), "factChecker1");
+
         @Test
-        public void whenSourceExists() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid());
-                result = srcJson; }};
+        public void whenReviewIsAdded() {
+            new Expectations() {
+                { stub.getState(srcKey); result = srcState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
 
-            Source updated = contract.addReview(ctx, src.getSid(), "factChecker1", 0.96f);
-            assertEquals(1, updated.getReviews().size());
-            assertEquals(0.96f, updated.getReviews().get("factChecker1").floatValue());
+            Review review = contract.addReview(ctx, src.getSid(), "factChecker1", 0.96f);
+            assertEquals(0.96f, review.getReliability().floatValue());
+            assertEquals(ContractType.SOURCE.name(), review.getEntityType());
 
-            updated = contract.removeReview(ctx, src.getSid(), "factChecker1");
-            assertEquals(0, updated.getReviews().size());
+            new Verifications() {
+                { stub.putState(reviewKey, reviewState); }
+                { stub.putState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.SOURCE.name(), src.getSid()), (byte[]) any); }
+                { stub.putState(srcKey, (byte[]) any); times = 0; }
+            };
         }
 
         @Test
         public void whenSourceDoesNotExist() {
-            new Expectations() { { ctx.getStub(); result = stub; } { stub.getStringState(src.getSid()); result = ""; } };
+            new Expectations() { { stub.getState(srcKey); result = new byte[0]; } };
+
+            Assertions.assertThrows(ChaincodeException.class, () -> contract.addReview(ctx, src.getSid(), "factChecker1", 0.96f));
+            new Verifications() { { stub.putState(anyString, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void whenReviewExists() {
+            new Expectations() {
+                { stub.getState(reviewKey); result = reviewState; }
+                { stub.getTxId(); result = "tx1"; }
+            };
+
+            Review removed = contract.removeReview(ctx, src.getSid(), "factChecker1");
+            assertEquals(0.96f, removed.getReliability().floatValue());
+
+            new Verifications() {
+                { stub.delState(reviewKey); }
+                { stub.delState(StateIndex.FACT_CHECKER_REVIEWS.key("factChecker1", ContractType.SOURCE.name(), src.getSid())); }
+            };
+        }
+
+        @Test
+        public void whenReviewDoesNotExist() {
+            new Expectations() { { stub.getState(reviewKey); result = new byte[0]; } };
             Assertions.assertThrows(ChaincodeException.class, () ->
-                    contract.addReview(ctx, src.getSid(), "factChecker1", 0.96f));
+                    contract.removeReview(ctx, src.getSid(), "factChecker1"));
         }
     }
 }
@@ -1,5 +1,7 @@
 package informiz.org.chaincode;
 
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.msp.Identities;
 import org.hyperledger.fabric.protos.peer.ChaincodeShim;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
@@ -10,6 +12,38 @@ import java.util.List;
 import java.util.Map;
 
 public class TestUtils {
+
+    /** The MSP of the test client */
+    public static final String MSP_ID = "Org1MSP";
+
+    /** A self-signed certificate of the test client */
+    private static final String CERTIFICATE =
+            "-----BEGIN CERTIFICATE-----\n"
+            + "MIICCzCCAbGgAwIBAgIUboRpMfK/ItlTocE0Z8XnDKMVwMUwCgYIKoZIzj0EAwIw\n"
+            + "WjELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNV\n"
+            + "BAsMBmNsaWVudDEfMB0GA1UEAwwWVXNlcjFAb3JnMS5leGFtcGxlLmNvbTAgFw0y\n"
+            + "NjEwMTgwMzA2NDNaGA8yMTI2MDkyNDAzMDY0M1owWjELMAkGA1UEBhMCVVMxGTAX\n"
+            + "BgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xDzANBgNVBAsMBmNsaWVudDEfMB0GA1UE\n"
+            + "AwwWVXNlcjFAb3JnMS5leGFtcGxlLmNvbTBZMBMGByqGSM49AgEGCCqGSM49AwEH\n"
+            + "A0IABB+ED2WEb0Q8HUPlRADmtnymoHgpsD2UrHdAYRs9HYbW9TfjBOnhDq6AVb3S\n"
+            + "h02ducvUQYDHbyRXQWmAyDaokHGjUzBRMB0GA1UdDgQWBBSgog+04Ztjg6bnPyjn\n"
+            + "srcocV0vJzAfBgNVHSMEGDAWgBSgog+04Ztjg6bnPyjnsrcocV0vJzAPBgNVHRMB\n"
+            + "Af8EBTADAQH/MAoGCCqGSM49BAMCA0gAMEUCIQCval4qCl0arPlkqmtHRy1d8k2x\n"
+            + "oEDbcHzgQMVa2gNvIgIgYXrWWAm0AV9SQcLHWCpyfnDWXyf3mvBYkiTi0we+VDA=\n"
+            + "-----END CERTIFICATE-----\n";
+
+    /**
+     * The identity of the test client, as returned by <code>ChaincodeStub.getCreator</code>.
+     * A transaction context can only be created for a stub with a valid creator.
+     * @return the serialized identity of the test client
+     */
+    public static byte[] creator() {
+        return Identities.SerializedIdentity.newBuilder()
+                .setMspid(MSP_ID)
+                .setIdBytes(ByteString.copyFromUtf8(CERTIFICATE))
+                .build().toByteArray();
+    }
+
     public static final class MockKeyValue implements KeyValue {
 
         private final String key;
@@ -113,6 +113,7 @@ public final class FactCheckerTest {
         // TODO: add/remove reviews
         String asJson = mapper.writeValueAsString(factChecker);
         FactChecker restored = mapper.readValue(asJson, FactChecker.class);
+        assertTrue(asJson.contains("\"docType\":\"FACT_CHECKER\""));
 
         assertEquals(factChecker.getFcid(), restored.getFcid());
         assertEquals(factChecker.getScore(), restored.getScore());
@@ -103,6 +103,31 @@ public final class HypothesisTest {
         assertEquals("{ \"claim\": \"Some hypothesis...\", \"score\": { \"reliability\": 0.50, \"confidence\": 0.00 } }", hypothesis.toString());
     }
 
+    @Test
+    public void reviewsDeriveScore() {
+        hypothesis.addReview("factChecker1", 0.9f);
+        hypothesis.addReview("factChecker2", 0.5f);
+        assertEquals(0.7f, hypothesis.getScore().getReliability(), 0.0001f);
+
+        hypothesis.addReview("factChecker2", 0.7f);
+        assertEquals(0.8f, hypothesis.getScore().getReliability(), 0.0001f);
+
+        hypothesis.removeReview("factChecker1");
+        assertEquals(1, hypothesis.getStatistics().getCount());
+        assertEquals(0.7f, hypothesis.getScore().getReliability(), 0.0001f);
+    }
+
+    @Test
+    public void addRemoveReferences() {
+        assertNull(hypothesis.addReference("text-1"));
+        assertEquals("text-1", hypothesis.addReference("text-1"));
+        assertEquals(1, hypothesis.getReferences().size());
+
+        assertEquals("text-1", hypothesis.removeReference("text-1"));
+        assertNull(hypothesis.removeReference("text-1"));
+        assertTrue(hypothesis.getReferences().isEmpty());
+    }
+
     /**
      * Test the ser/de configuration of the class, e.g handle private setters
      * @throws IOException if ser/de fails
@@ -114,12 +139,14 @@ public final class HypothesisTest {
         // TODO: add/remove reviews
         String asJson = mapper.writeValueAsString(hypothesis);
         Hypothesis restored = mapper.readValue(asJson, Hypothesis.class);
+        assertTrue(asJson.contains("\"docType\":\"HYPOTHESIS\""));
 
         assertEquals(hypothesis.getHid(), restored.getHid());
         assertEquals(hypothesis.getClaim(), restored.getClaim());
         assertEquals(hypothesis.getScore(), restored.getScore());
         assertEquals(hypothesis.getLocale(), restored.getLocale());
         assertEquals(hypothesis.getReviews(), restored.getReviews());
+        assertEquals(hypothesis.getStatistics(), restored.getStatistics());
         assertEquals(hypothesis.getReferences(), restored.getReferences());
     }
 
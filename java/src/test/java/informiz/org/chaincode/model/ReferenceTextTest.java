@@ -103,6 +103,20 @@ public final class ReferenceTextTest {
         assertEquals("{ \"text\": \"Some text...\", \"score\": { \"reliability\": 0.50, \"confidence\": 0.00 } }", text.toString());
     }
 
+    @Test
+    public void reviewsDeriveScore() {
+        text.addReview("factChecker1", 0.9f);
+        text.addReview("factChecker2", 0.5f);
+        assertEquals(0.7f, text.getScore().getReliability(), 0.0001f);
+
+        text.addReview("factChecker2", 0.7f);
+        assertEquals(0.8f, text.getScore().getReliability(), 0.0001f);
+
+        text.removeReview("factChecker1");
+        assertEquals(1, text.getStatistics().getCount());
+        assertEquals(0.7f, text.getScore().getReliability(), 0.0001f);
+    }
+
     /**
      * Test the ser/de configuration of the class, e.g handle private setters
      * @throws IOException if ser/de fails
@@ -114,6 +128,7 @@ public final class ReferenceTextTest {
         // TODO: add/remove reviews
         String asJson = mapper.writeValueAsString(text);
         ReferenceText restored = mapper.readValue(asJson, ReferenceText.class);
+        assertTrue(asJson.contains("\"docType\":\"REF_TEXT\""));
 
         assertEquals(text.getTid(), restored.getTid());
         assertEquals(text.getSid(), restored.getSid());
@@ -122,6 +137,7 @@ public final class ReferenceTextTest {
         assertEquals(text.getLink(), restored.getLink());
         assertEquals(text.getLocale(), restored.getLocale());
         assertEquals(text.getReviews(), restored.getReviews());
+        assertEquals(text.getStatistics(), restored.getStatistics());
     }
 
 
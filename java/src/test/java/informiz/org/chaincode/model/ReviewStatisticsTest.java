@@ -0,0 +1,87 @@
+package informiz.org.chaincode.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ReviewStatisticsTest {
+
+    @Test
+    public void noScoreWithoutReviews() {
+        assertNull(new ReviewStatistics().toScore());
+    }
+
+    @Test
+    public void reliabilityIsTheMean() {
+        ReviewStatistics statistics = new ReviewStatistics();
+        statistics.add(0.9f);
+        statistics.add(0.7f);
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(0.8f, statistics.toScore().getReliability(), 0.0001f);
+    }
+
+    @Test
+    public void confidenceGrowsWithAgreement() {
+        ReviewStatistics agreeing = new ReviewStatistics();
+        agreeing.add(0.8f);
+        agreeing.add(0.8f);
+        ReviewStatistics disagreeing = new ReviewStatistics();
+        disagreeing.add(0.6f);
+        disagreeing.add(1.0f);
+
+        assertTrue(agreeing.toScore().getConfidence() > disagreeing.toScore().getConfidence());
+    }
+
+    @Test
+    public void confidenceGrowsWithReviews() {
+        ReviewStatistics few = new ReviewStatistics();
+        few.add(0.8f);
+        ReviewStatistics many = new ReviewStatistics();
+        for (int i = 0; i < 10; i++) {
+            many.add(0.8f);
+        }
+
+        assertTrue(many.toScore().getConfidence() > few.toScore().getConfidence());
+    }
+
+    @Test
+    public void changesMergeIncrementally() {
+        ReviewStatistics statistics = new ReviewStatistics();
+        statistics.merge(ReviewStatistics.change(null, 0.9f));
+        statistics.merge(ReviewStatistics.change(null, 0.5f));
+        statistics.merge(ReviewStatistics.change(0.5f, 0.7f));
+
+        ReviewStatistics expected = new ReviewStatistics();
+        expected.add(0.9f);
+        expected.add(0.7f);
+        assertEquals(expected.getCount(), statistics.getCount());
+        assertEquals(expected.getSum(), statistics.getSum(), 0.0001);
+        assertEquals(expected.getSumOfSquares(), statistics.getSumOfSquares(), 0.0001);
+
+        statistics.merge(ReviewStatistics.change(0.9f, null));
+        statistics.merge(ReviewStatistics.change(0.7f, null));
+        assertNull(statistics.toScore());
+    }
+
+    /**
+     * Test the ser/de configuration of the class
+     * @throws IOException if ser/de fails
+     */
+    @Test
+    public void jsonConversion() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ReviewStatistics statistics = ReviewStatistics.change(null, 0.9f);
+
+        String asJson = mapper.writeValueAsString(statistics);
+        ReviewStatistics restored = mapper.readValue(asJson, ReviewStatistics.class);
+
+        assertEquals(statistics, restored);
+    }
+}
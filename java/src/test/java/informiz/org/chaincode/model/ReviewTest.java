@@ -0,0 +1,85 @@
+package informiz.org.chaincode.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mockit.Tested;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ReviewTest {
+
+    @Nested
+    class Equality {
+
+        @Tested
+        Review review = Review.createReview("hypothesis-1", "factChecker1", 0.9f);
+
+        @Test
+        public void isReflexive() {
+            assertTrue(review.equals(review));
+        }
+
+        @Test
+        public void isSymmetric() {
+            Review otherReview = Review.createReview("hypothesis-1", "factChecker1", 0.9f);
+
+            assertTrue(review.equals(otherReview));
+            assertTrue(otherReview.equals(review));
+        }
+
+        @Test
+        public void handlesOtherObjects() {
+            assertFalse(review.equals("not a review"));
+        }
+
+        @Test
+        public void handlesNull() {
+            assertFalse(review.equals(null));
+        }
+
+        @Test
+        public void ifSameEntityAndFactCheckerThenEqual() {
+            Review reviewB = Review.createReview("hypothesis-1", "factChecker1", 0.1f);
+
+            assertTrue(review.equals(reviewB));
+        }
+
+        @Test
+        public void ifDifferentFactCheckerThenNotEqual() {
+            Review reviewB = Review.createReview("hypothesis-1", "factChecker2", 0.9f);
+
+            assertFalse(review.equals(reviewB));
+        }
+    }
+
+    @Tested
+    Review review = Review.createReview("hypothesis-1", "factChecker1", 0.9f);
+
+    @Test
+    public void toStringFormat() {
+        assertEquals("{ \"entityId\": \"hypothesis-1\", \"fcid\": \"factChecker1\", \"reliability\": 0.90 }",
+                review.toString());
+    }
+
+    /**
+     * Test the ser/de configuration of the class, e.g handle private setters
+     * @throws IOException if ser/de fails
+     */
+    @Test
+    public void jsonConversion() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String asJson = mapper.writeValueAsString(review);
+        Review restored = mapper.readValue(asJson, Review.class);
+
+        assertEquals(review.getEntityId(), restored.getEntityId());
+        assertEquals(review.getFcid(), restored.getFcid());
+        assertEquals(review.getReliability(), restored.getReliability());
+    }
+}
@@ -102,6 +102,20 @@ public final class SourceTest {
         assertEquals("{ \"name\": \"Some source...\", \"score\": { \"reliability\": 0.50, \"confidence\": 0.00 } }", source.toString());
     }
 
+    @Test
+    public void reviewsDeriveScore() {
+        source.addReview("factChecker1", 0.9f);
+        source.addReview("factChecker2", 0.5f);
+        assertEquals(0.7f, source.getScore().getReliability(), 0.0001f);
+
+        source.addReview("factChecker2", 0.7f);
+        assertEquals(0.8f, source.getScore().getReliability(), 0.0001f);
+
+        source.removeReview("factChecker1");
+        assertEquals(1, source.getStatistics().getCount());
+        assertEquals(0.7f, source.getScore().getReliability(), 0.0001f);
+    }
+
     /**
      * Test the ser/de configuration of the class, e.g handle private setters
      * @throws IOException if ser/de fails
@@ -113,11 +127,13 @@ public final class SourceTest {
         // TODO: add/remove reviews
         String asJson = mapper.writeValueAsString(source);
         Source restored = mapper.readValue(asJson, Source.class);
+        assertTrue(asJson.contains("\"docType\":\"SOURCE\""));
 
         assertEquals(source.getSid(), restored.getSid());
         assertEquals(source.getScore(), restored.getScore());
         assertEquals(source.getName(), restored.getName());
         assertEquals(source.getReviews(), restored.getReviews());
+        assertEquals(source.getStatistics(), restored.getStatistics());
     }
 
 
@@ -0,0 +1,65 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Score;
+import informiz.org.chaincode.model.Utils;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ChangeEventsTest {
+
+    @Mocked
+    ChaincodeStub stub;
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void publishesOneEventWhenFlushed() throws IOException {
+        ChangeEvents events = new ChangeEvents(stub);
+        events.record(ContractType.SOURCE, "source-1", ChangeEvents.Kind.CREATED, Utils.createScore("0.5", "0.5"));
+        events.record(ContractType.SOURCE, "source-1", ChangeEvents.Kind.UPDATED, Utils.createScore("0.9", "0.8"));
+        events.record(ContractType.HYPOTHESIS, "hypothesis-1", ChangeEvents.Kind.REVIEWED, null);
+
+        JsonNode changes = mapper.readTree(events.encode()).get("changes");
+        assertEquals(2, changes.size());
+        assertEquals("source-1", changes.get(0).get("id").asText());
+        assertEquals("CREATED", changes.get(0).get("kind").asText());
+        assertEquals(0.9f, changes.get(0).get("reliability").floatValue());
+        assertEquals("REVIEWED", changes.get(1).get("kind").asText());
+        assertFalse(changes.get(1).has("reliability"));
+        new Verifications() { { stub.setEvent(anyString, (byte[]) any); times = 0; } };
+
+        events.flush();
+        events.flush();
+        new Verifications() { { stub.setEvent(ChangeEvents.EVENT_NAME, (byte[]) any); times = 1; } };
+    }
+
+    @Test
+    public void keepsTheMostSignificantKindOfChange() throws IOException {
+        ChangeEvents events = new ChangeEvents(stub);
+        Score score = Utils.createScore("0.5", "0.5");
+        events.record(ContractType.FACT_CHECKER, "fc-1", ChangeEvents.Kind.UPDATED, score);
+        events.record(ContractType.FACT_CHECKER, "fc-1", ChangeEvents.Kind.DELETED, score);
+
+        JsonNode changes = mapper.readTree(events.encode()).get("changes");
+        assertEquals(1, changes.size());
+        assertEquals("DELETED", changes.get(0).get("kind").asText());
+    }
+
+    @Test
+    public void publishesNothingWithoutChanges() {
+        new ChangeEvents(stub).flush();
+        new Verifications() { { stub.setEvent(anyString, (byte[]) any); times = 0; } };
+    }
+}
@@ -0,0 +1,140 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.TestUtils;
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Source;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class IdentityMapTest {
+
+    @Mocked
+    ChaincodeStub stub;
+
+    static Source source = Source.createSource("source-1", "www.nasa.gov", null);
+
+    static String key = StateKeys.entityKey(ContractType.SOURCE, source.getSid());
+
+    static byte[] sourceState;
+
+    @BeforeAll
+    private static void prepareTest() throws IOException {
+        sourceState = StateCodec.getDefault().encode(source);
+    }
+
+    @Nested
+    class Reads {
+
+        @Test
+        public void areMadeOncePerRecord() {
+            new Expectations() { { stub.getState(key); result = sourceState; } };
+            IdentityMap records = new IdentityMap(stub);
+
+            Source first = records.get(key, Source.class);
+            Source second = records.get(key, Source.class);
+            assertSame(first, second);
+            assertEquals(source.getName(), first.getName());
+
+            new Verifications() { { stub.getState(key); times = 1; } };
+        }
+
+        @Test
+        public void whenRecordDoesNotExist() {
+            new Expectations() { { stub.getState(key); result = new byte[0]; } };
+            IdentityMap records = new IdentityMap(stub);
+
+            assertNull(records.get(key, Source.class));
+            assertNull(records.get(key, Source.class));
+
+            new Verifications() { { stub.getState(key); times = 1; } };
+        }
+
+        @Test
+        public void seeTheTransactionsOwnWrites() {
+            IdentityMap records = new IdentityMap(stub);
+            records.put(key, source);
+
+            assertSame(source, records.get(key, Source.class));
+
+            new Verifications() { { stub.getState(key); times = 0; } };
+        }
+
+        @Test
+        public void ofCopiesDoNotChangeTheRecord() {
+            new Expectations() { { stub.getState(key); result = sourceState; } };
+            IdentityMap records = new IdentityMap(stub);
+            Source record = records.get(key, Source.class);
+
+            Source copy = records.copy(key, Source.class);
+            copy.getReviews().put("factChecker1", 0.9f);
+
+            assertNotSame(record, copy);
+            assertEquals(record.getName(), copy.getName());
+            assertTrue(record.getReviews().isEmpty());
+            assertSame(record, records.get(key, Source.class));
+        }
+    }
+
+    @Nested
+    class Writes {
+
+        @Test
+        public void areFlushedOncePerRecord() {
+            new Expectations() { { stub.getState(key); result = sourceState; } };
+            IdentityMap records = new IdentityMap(stub);
+
+            Source read = records.get(key, Source.class);
+            read.setName("www.nasa.com");
+            records.put(key, read);
+            read.setName("www.nasa.org");
+            records.put(key, read);
+
+            new Verifications() { { stub.putState(key, (byte[]) any); times = 0; } };
+
+            records.flush();
+            records.flush();
+
+            new Verifications() { {
+                byte[] written;
+                stub.putState(key, written = withCapture()); times = 1;
+                assertEquals("www.nasa.org", decode(written).getName());
+            } };
+        }
+
+        @Test
+        public void areDeferredByContractContexts() {
+            new Expectations() { { stub.getCreator(); result = TestUtils.creator(); } };
+            IzContext ctx = new IzContext(stub);
+            assertSame(ctx.getRecords(), IzContext.records(ctx));
+
+            ctx.getRecords().put(key, source);
+            new Verifications() { { stub.putState(key, (byte[]) any); times = 0; } };
+        }
+
+        @Test
+        public void areOnlyKeptByContractContexts(@Mocked Context ctx) {
+            assertThrows(IllegalStateException.class, () -> IzContext.records(ctx));
+        }
+    }
+
+    private static Source decode(final byte[] state) {
+        try {
+            return StateCodec.getDefault().decode(state, Source.class);
+        } catch (IOException e) {
+            return fail(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.Hypothesis;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class PageWriterTest {
+
+    @Mocked QueryResultsIteratorWithMetadata<KeyValue> states;
+    @Mocked ChaincodeShim.QueryResponseMetadata metadata;
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    static Hypothesis hypothesis = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
+
+    @Test
+    public void embedsRecordsOfAnyFormat() throws IOException {
+        List<KeyValue> records = Arrays.asList(
+                keyValue("hypothesis-1", new StateCodec(StateCodec.Format.CBOR).encode(hypothesis)),
+                keyValue("hypothesis-2", new StateCodec(StateCodec.Format.JSON).encode(hypothesis)));
+        prepare(records, "HYPOTHESIS\u0000hypothesis-2\u0000");
+
+        JsonNode page = mapper.readTree(PageWriter.write(states, StateCodec.getDefault()));
+        assertEquals("HYPOTHESIS\u0000hypothesis-2\u0000", page.get("bookmark").asText());
+        assertEquals(2, page.get("results").size());
+        for (JsonNode record : page.get("results")) {
+            assertEquals(hypothesis.getHid(), record.get("hid").asText());
+            assertEquals(hypothesis.getClaim(), record.get("claim").asText());
+        }
+    }
+
+    @Test
+    public void whenPageIsEmpty() throws IOException {
+        prepare(Collections.emptyList(), "");
+
+        String page = PageWriter.write(states, StateCodec.getDefault());
+        assertEquals("{\"results\":[],\"bookmark\":\"\"}", page);
+    }
+
+    private void prepare(List<KeyValue> records, String bookmark) {
+        new Expectations() {
+            { metadata.getFetchedRecordsCount(); result = records.size(); }
+            { metadata.getBookmark(); result = bookmark; }
+            { states.getMetadata(); result = metadata; }
+            { states.iterator(); result = records.iterator(); minTimes = 0; }
+        };
+    }
+
+    private static KeyValue keyValue(final String key, final byte[] value) {
+        return new KeyValue() {
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            public byte[] getValue() {
+                return value;
+            }
+
+            @Override
+            public String getStringValue() {
+                return new String(value, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.Hypothesis;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ProjectionTest {
+
+    static Hypothesis hypothesis = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    @Nested
+    class Parsing {
+
+        @Test
+        public void whenFieldsAreGiven() {
+            Projection projection = Projection.parse("[\"hid\", \"score\", \"hid\"]");
+            assertFalse(projection.isAll());
+            assertEquals(Arrays.asList("hid", "score"), Arrays.asList(projection.getFields().toArray()));
+        }
+
+        @Test
+        public void whenFieldsAreEmpty() {
+            assertTrue(Projection.parse("").isAll());
+            assertTrue(Projection.parse(null).isAll());
+            assertTrue(Projection.parse("[]").isAll());
+        }
+
+        @Test
+        public void whenFieldsAreInvalid() {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Projection.parse("hid"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Projection.parse("{\"hid\": 1}"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Projection.parse("[\"hid\", 1]"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Projection.parse("[\" \"]"));
+        }
+    }
+
+    @Nested
+    class Writing {
+
+        @Test
+        public void writesOnlyTheFields() throws IOException {
+            Projection projection = Projection.parse("[\"hid\", \"score\"]");
+            for (StateCodec.Format format : StateCodec.Format.values()) {
+                StateCodec codec = new StateCodec(format);
+                JsonNode record = mapper.readTree(write(projection, codec, codec.encode(hypothesis)));
+
+                assertEquals(2, record.size());
+                assertEquals(hypothesis.getHid(), record.get("hid").asText());
+                assertEquals(hypothesis.getScore().getReliability().floatValue(),
+                        record.get("score").get("reliability").floatValue());
+            }
+        }
+
+        @Test
+        public void writesWholeRecords() throws IOException {
+            StateCodec codec = StateCodec.getDefault();
+            String json = write(Projection.ALL, codec, codec.encode(hypothesis));
+            assertEquals(hypothesis, mapper.readValue(json, Hypothesis.class));
+        }
+
+        @Test
+        public void whenStateIsEmpty() throws IOException {
+            assertEquals("null", write(Projection.parse("[\"hid\"]"), StateCodec.getDefault(), new byte[0]));
+        }
+    }
+
+    private static String write(Projection projection, StateCodec codec, byte[] state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        projection.write(state, codec, out);
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,66 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.SourceContract;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ReadOnlyGuardTest {
+
+    @Mocked
+    ChaincodeStub stub;
+
+    ReadOnlyGuard guard = new ReadOnlyGuard(SourceContract.class);
+
+    @Nested
+    class ReadOnlyTransactions {
+
+        @Test
+        public void areTheEvaluateTransactions() {
+            assertTrue(guard.isReadOnly("querySource"));
+            assertTrue(guard.isReadOnly("SourceContract:queryAllSources"));
+            assertFalse(guard.isReadOnly("SourceContract:updateSourceName"));
+            assertFalse(guard.isReadOnly(null));
+        }
+    }
+
+    @Nested
+    class Guard {
+
+        @Test
+        public void whenTransactionIsReadOnly() {
+            new Expectations() {
+                { stub.getFunction(); result = "SourceContract:querySource"; }
+                { stub.getState("key"); result = new byte[] { 1 }; }
+            };
+
+            ChaincodeStub guarded = guard.guard(stub);
+            assertArrayEquals(new byte[] { 1 }, guarded.getState("key"));
+            Assertions.assertThrows(ChaincodeException.class, () -> guarded.putState("key", new byte[] { 2 }));
+            Assertions.assertThrows(ChaincodeException.class, () -> guarded.putStringState("key", "value"));
+            Assertions.assertThrows(ChaincodeException.class, () -> guarded.delState("key"));
+            Assertions.assertThrows(ChaincodeException.class, () -> guarded.setEvent("event", new byte[0]));
+
+            new Verifications() {
+                { stub.putState(anyString, (byte[]) any); times = 0; }
+                { stub.delState(anyString); times = 0; }
+            };
+        }
+
+        @Test
+        public void whenTransactionIsNotReadOnly() {
+            new Expectations() { { stub.getFunction(); result = "SourceContract:updateSourceName"; } };
+            assertSame(stub, guard.guard(stub));
+        }
+    }
+}
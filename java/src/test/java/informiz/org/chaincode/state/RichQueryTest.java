@@ -0,0 +1,114 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.ContractType;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class RichQueryTest {
+
+    @Mocked ChaincodeStub stub;
+    @Mocked QueryResultsIteratorWithMetadata<KeyValue> states;
+    @Mocked ChaincodeShim.QueryResponseMetadata metadata;
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    @Nested
+    class QueryJson {
+
+        @Test
+        public void selectsTheTypeAndUsesTheIndex() throws IOException {
+            JsonNode query = mapper.readTree(RichQuery.select(ContractType.REF_TEXT)
+                    .equalTo("sid", "source-1")
+                    .equalTo("locale", "en_US")
+                    .toJson());
+
+            assertEquals("REF_TEXT", query.get("selector").get("docType").asText());
+            assertEquals("source-1", query.get("selector").get("sid").asText());
+            assertEquals("en_US", query.get("selector").get("locale").asText());
+            assertEquals(CouchIndex.SOURCE_LOCALE.getDesignDocument(), query.get("use_index").get(0).asText());
+            assertEquals(CouchIndex.SOURCE_LOCALE.getName(), query.get("use_index").get(1).asText());
+        }
+
+        @Test
+        public void supportsRanges() throws IOException {
+            JsonNode query = mapper.readTree(RichQuery.select(ContractType.SOURCE)
+                    .greaterThan("score.reliability", 0.8f)
+                    .toJson());
+
+            assertEquals(0.8f, query.get("selector").get("score.reliability").get("$gt").floatValue());
+            assertEquals(CouchIndex.RELIABILITY.getName(), query.get("use_index").get(1).asText());
+        }
+
+        @Test
+        public void projectsFields() throws IOException {
+            JsonNode query = mapper.readTree(RichQuery.select(ContractType.SOURCE)
+                    .greaterThan("score.reliability", 0.8f)
+                    .project(Projection.parse("[\"sid\",\"score\"]"))
+                    .toJson());
+
+            assertEquals(2, query.get("fields").size());
+            assertEquals("sid", query.get("fields").get(0).asText());
+            assertNull(mapper.readTree(RichQuery.select(ContractType.SOURCE)
+                    .greaterThan("score.reliability", 0.8f)
+                    .toJson()).get("fields"));
+        }
+
+        @Test
+        public void whenNoIndexCoversTheQuery() {
+            Assertions.assertThrows(ChaincodeException.class, () -> RichQuery.select(ContractType.SOURCE)
+                    .equalTo("name", "NASA")
+                    .toJson());
+            Assertions.assertThrows(ChaincodeException.class, () -> RichQuery.select(ContractType.SOURCE)
+                    .equalTo("locale", "en_US")
+                    .greaterThan("score.reliability", 0.8f)
+                    .toJson());
+        }
+    }
+
+    @Nested
+    class Execution {
+
+        @Test
+        public void whenStateFormatIsJson() {
+            new Expectations() {
+                { stub.getQueryResultWithPagination(anyString, 10, ""); result = states; }
+                { states.getMetadata(); result = metadata; }
+                { metadata.getBookmark(); result = ""; }
+                { states.iterator(); result = Collections.emptyIterator(); minTimes = 0; }
+            };
+
+            String page = RichQuery.select(ContractType.FACT_CHECKER)
+                    .equalTo("active", true)
+                    .execute(stub, new StateCodec(StateCodec.Format.JSON), 10, "");
+            assertEquals("{\"results\":[],\"bookmark\":\"\"}", page);
+        }
+
+        @Test
+        public void whenStateFormatIsBinary() {
+            Assertions.assertThrows(ChaincodeException.class, () -> RichQuery.select(ContractType.FACT_CHECKER)
+                    .equalTo("active", true)
+                    .execute(stub, new StateCodec(StateCodec.Format.CBOR), 10, ""));
+
+            new Verifications() { { stub.getQueryResultWithPagination(anyString, anyInt, anyString); times = 0; } };
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.Utils;
+import mockit.Expectations;
+import mockit.Mocked;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ScoreHistoryTest {
+
+    @Mocked ChaincodeStub stub;
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    @Nested
+    class Downsampling {
+
+        @Test
+        public void keepsShortTimelines() {
+            List<ScoreHistory.Point> points = timeline(5);
+            assertSame(points, ScoreHistory.downsample(points, 10));
+        }
+
+        @Test
+        public void keepsTheLastPointOfEachBucket() {
+            List<ScoreHistory.Point> sampled = ScoreHistory.downsample(timeline(100), 10);
+
+            assertEquals(10, sampled.size());
+            assertEquals(9, sampled.get(0).time);
+            assertEquals(99, sampled.get(9).time);
+        }
+
+        private List<ScoreHistory.Point> timeline(int size) {
+            List<ScoreHistory.Point> points = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                points.add(new ScoreHistory.Point(i, Utils.createScore("0.5", "0.5")));
+            }
+            return points;
+        }
+    }
+
+    @Test
+    public void readsOnlyLiveValuesOldestFirst() throws IOException {
+        Hypothesis hypothesis = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
+        StateCodec codec = new StateCodec(StateCodec.Format.CBOR);
+        List<KeyModification> history = new ArrayList<>();
+        hypothesis.setScore(Utils.createScore("0.9", "0.8"));
+        history.add(modification(2000, codec.encode(hypothesis), false));
+        history.add(modification(1500, new byte[0], true));
+        hypothesis.setScore(Utils.createScore("0.6", "0.4"));
+        history.add(modification(1000, mapper.writeValueAsBytes(hypothesis), false));
+        new Expectations() { { stub.getHistoryForKey("key"); result = iterator(history); } };
+
+        JsonNode points = mapper.readTree(ScoreHistory.query(stub, "key", codec, 10)).get("points");
+
+        assertEquals(2, points.size());
+        assertEquals(1000, points.get(0).get("time").asLong());
+        assertEquals(0.6f, points.get(0).get("reliability").floatValue());
+        assertEquals(0.9f, points.get(1).get("reliability").floatValue());
+        assertEquals(0.8f, points.get(1).get("confidence").floatValue());
+    }
+
+    private static KeyModification modification(long time, byte[] value, boolean deleted) {
+        return new KeyModification() {
+            @Override public String getTxId() { return "tx" + time; }
+            @Override public byte[] getValue() { return value; }
+            @Override public String getStringValue() { return new String(value); }
+            @Override public Instant getTimestamp() { return Instant.ofEpochMilli(time); }
+            @Override public boolean isDeleted() { return deleted; }
+        };
+    }
+
+    private static QueryResultsIterator<KeyModification> iterator(List<KeyModification> history) {
+        return new QueryResultsIterator<KeyModification>() {
+            @Override public Iterator<KeyModification> iterator() { return history.iterator(); }
+            @Override public void close() {}
+        };
+    }
+}
@@ -0,0 +1,112 @@
+package informiz.org.chaincode.state;
+
+import informiz.org.chaincode.model.ContractType;
+import informiz.org.chaincode.model.Score;
+import informiz.org.chaincode.model.Utils;
+import mockit.Expectations;
+import mockit.Mocked;
+import mockit.Verifications;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class ScoreIndexTest {
+
+    @Mocked ChaincodeStub stub;
+
+    @Nested
+    class Encoding {
+
+        @Test
+        public void isFixedWidthAndDescending() {
+            float[] scores = { 1.0f, 0.95f, 0.9f, 0.5f, 0.3f, 0.01f, 0.0f };
+            for (int i = 0; i < scores.length; i++) {
+                assertEquals(8, ScoreIndex.encode(scores[i]).length());
+                if (i > 0) {
+                    assertTrue(ScoreIndex.encode(scores[i - 1]).compareTo(ScoreIndex.encode(scores[i])) < 0);
+                }
+            }
+        }
+
+        @Test
+        public void clampsOutOfRangeScores() {
+            assertEquals(ScoreIndex.encode(1.0f), ScoreIndex.encode(1.5f));
+            assertEquals(ScoreIndex.encode(0.0f), ScoreIndex.encode(-0.5f));
+            assertEquals(ScoreIndex.encode(0.0f), ScoreIndex.encode(Float.NaN));
+        }
+    }
+
+    @Nested
+    class Maintenance {
+
+        @Test
+        public void indexesBothComponents() {
+            List<String> keys = ScoreIndex.keys(ContractType.SOURCE, "source-1", Utils.createScore("0.9", "0.7"));
+            assertEquals(2, keys.size());
+            assertTrue(keys.get(0).startsWith("SCORE:RELIABILITY:SOURCE:"));
+            assertTrue(keys.get(1).startsWith("SCORE:CONFIDENCE:SOURCE:"));
+            assertTrue(ScoreIndex.keys(ContractType.SOURCE, "source-1", null).isEmpty());
+        }
+
+        @Test
+        public void movesOnlyChangedEntries() {
+            List<String> previous = ScoreIndex.keys(ContractType.SOURCE, "source-1", Utils.createScore("0.9", "0.7"));
+            List<String> current = ScoreIndex.keys(ContractType.SOURCE, "source-1", Utils.createScore("0.6", "0.7"));
+
+            ScoreIndex.move(stub, previous, current);
+
+            new Verifications() {
+                { stub.delState(previous.get(0)); times = 1; }
+                { stub.putState(current.get(0), (byte[]) any); times = 1; }
+                { stub.delState(previous.get(1)); times = 0; }
+                { stub.putState(current.get(1), (byte[]) any); times = 0; }
+            };
+        }
+    }
+
+    @Nested
+    class Lookup {
+
+        @Test
+        public void scansTheRangeHighestFirst() {
+            String prefix = "SCORE:RELIABILITY:HYPOTHESIS:";
+            ScoreIndex.RELIABILITY.range(stub, ContractType.HYPOTHESIS, 0.3f, 0.8f, 20, "");
+
+            new Verifications() { {
+                stub.getStateByRangeWithPagination(prefix + ScoreIndex.encode(0.8f) + ";",
+                        prefix + ScoreIndex.encode(0.3f) + ";", 20, "");
+            } };
+        }
+
+        @Test
+        public void scansAllForTopK() {
+            String prefix = "SCORE:CONFIDENCE:SOURCE:";
+            ScoreIndex.CONFIDENCE.range(stub, ContractType.SOURCE, null, null, 20, "");
+
+            new Verifications() { { stub.getStateByRangeWithPagination(prefix, prefix + "~", 20, ""); } };
+        }
+
+        @Test
+        public void resolvesTheEntityId(@Mocked KeyValue entry) {
+            String key = ScoreIndex.keys(ContractType.REF_TEXT, "text:1", Utils.createScore("0.9", "0.7")).get(0);
+            new Expectations() { { entry.getKey(); result = key; } };
+
+            assertEquals("text:1", ScoreIndex.id(entry));
+        }
+
+        @Test
+        public void whenOrderIsUnknown() {
+            assertSame(ScoreIndex.RELIABILITY, ScoreIndex.forName("reliability"));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> ScoreIndex.forName("popularity"));
+        }
+    }
+}
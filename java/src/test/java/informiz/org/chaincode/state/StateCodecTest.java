@@ -0,0 +1,183 @@
+package informiz.org.chaincode.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import informiz.org.chaincode.model.Hypothesis;
+import informiz.org.chaincode.model.ReviewStatistics;
+import informiz.org.chaincode.model.Score;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class StateCodecTest {
+
+    static Hypothesis hypothesis = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
+
+    static ObjectMapper mapper = new ObjectMapper();
+
+    @Nested
+    class CborFormat {
+
+        StateCodec codec = new StateCodec(StateCodec.Format.CBOR);
+
+        @Test
+        public void roundTrip() throws IOException {
+            byte[] state = codec.encode(hypothesis);
+            assertEquals(StateCodec.CBOR_V1, state[0]);
+
+            Hypothesis decoded = codec.decode(state, Hypothesis.class);
+            assertEquals(hypothesis, decoded);
+            assertEquals(hypothesis.getClaim(), decoded.getClaim());
+            assertEquals(hypothesis.getLocale(), decoded.getLocale());
+            assertEquals(hypothesis.getScore(), decoded.getScore());
+        }
+
+        @Test
+        public void reusesBuffers() throws IOException {
+            byte[] first = codec.encode(hypothesis);
+            byte[] stats = codec.encode(ReviewStatistics.change(null, 0.9f));
+            byte[] second = codec.encode(hypothesis);
+
+            assertArrayEquals(first, second);
+            assertEquals(ReviewStatistics.change(null, 0.9f), codec.decode(stats, ReviewStatistics.class));
+        }
+
+        @Test
+        public void isSmallerThanJson() throws IOException {
+            assertTrue(codec.encode(hypothesis).length < mapper.writeValueAsBytes(hypothesis).length);
+        }
+
+        @Test
+        public void convertsToJson() throws IOException {
+            ReviewStatistics stats = ReviewStatistics.change(null, 0.9f);
+            String json = toJson(codec, codec.encode(stats));
+            assertEquals(stats, mapper.readValue(json, ReviewStatistics.class));
+        }
+    }
+
+    @Nested
+    class JsonFormat {
+
+        StateCodec codec = new StateCodec(StateCodec.Format.JSON);
+
+        @Test
+        public void writesPlainJson() throws IOException {
+            byte[] state = codec.encode(hypothesis);
+            assertEquals('{', state[0]);
+            assertEquals(hypothesis, mapper.readValue(toJson(codec, state), Hypothesis.class));
+        }
+    }
+
+    @Nested
+    class FormatVariable {
+
+        @Test
+        public void defaultsToJson() {
+            assertEquals(StateCodec.Format.JSON, StateCodec.formatFromString(null));
+            assertEquals(StateCodec.Format.JSON, StateCodec.formatFromString(" "));
+        }
+
+        @Test
+        public void ignoresCaseAndWhitespace() {
+            assertEquals(StateCodec.Format.CBOR, StateCodec.formatFromString(" cbor "));
+        }
+
+        @Test
+        public void rejectsUnknownFormats() {
+            IllegalArgumentException thrown = Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> StateCodec.formatFromString("CBR"));
+            assertTrue(thrown.getMessage().contains(StateCodec.FORMAT_VARIABLE));
+            assertTrue(thrown.getMessage().contains("[JSON, CBOR]"));
+        }
+    }
+
+    @Nested
+    class Decoding {
+
+        StateCodec codec = new StateCodec(StateCodec.Format.CBOR);
+
+        @Test
+        public void readsLegacyJson() throws IOException {
+            Hypothesis decoded = codec.decode(mapper.writeValueAsBytes(hypothesis), Hypothesis.class);
+            assertEquals(hypothesis, decoded);
+            assertEquals(0.96f, codec.decode("0.96".getBytes(), Float.class).floatValue());
+        }
+
+        @Test
+        public void readsAnyFormat() throws IOException {
+            byte[] state = new StateCodec(StateCodec.Format.JSON).encode(hypothesis);
+            assertEquals(hypothesis, codec.decode(state, Hypothesis.class));
+        }
+
+        @Test
+        public void whenStateIsEmpty() throws IOException {
+            assertNull(codec.decode(new byte[0], Hypothesis.class));
+            assertNull(codec.decode(null, Hypothesis.class));
+        }
+
+        @Test
+        public void whenVersionIsUnknown() {
+            Assertions.assertThrows(IOException.class, () -> codec.decode(new byte[] { 0x02, 0x00 }, Hypothesis.class));
+        }
+    }
+
+    @Nested
+    class FieldDecoding {
+
+        @Test
+        public void readsOnlyTheField() throws IOException {
+            Hypothesis cited = Hypothesis.createHypothesis("Canada has ten provinces", Locale.CANADA);
+            cited.addReference("text-1");
+            cited.addReference("text-2");
+
+            for (StateCodec.Format format : StateCodec.Format.values()) {
+                StateCodec codec = new StateCodec(format);
+                byte[] state = codec.encode(cited);
+                assertEquals(cited.getScore(), codec.decodeField(state, "score", Score.class));
+                assertEquals(cited.getClaim(), codec.decodeField(state, "claim", String.class));
+            }
+        }
+
+        @Test
+        public void readsSeveralFields() throws IOException {
+            Map<String, Class<?>> fields = new HashMap<>();
+            fields.put("score", Score.class);
+            fields.put("statistics", ReviewStatistics.class);
+
+            Map<String, Object> values = StateCodec.getDefault().decodeFields(
+                    StateCodec.getDefault().encode(hypothesis), fields);
+            assertEquals(hypothesis.getScore(), values.get("score"));
+            assertEquals(hypothesis.getStatistics(), values.get("statistics"));
+        }
+
+        @Test
+        public void whenFieldIsMissing() throws IOException {
+            StateCodec codec = StateCodec.getDefault();
+            assertNull(codec.decodeField(codec.encode(hypothesis), "no-such-field", String.class));
+            assertNull(codec.decodeField(new byte[0], "score", Score.class));
+        }
+
+        @Test
+        public void whenRecordIsNotAnObject() {
+            Assertions.assertThrows(IOException.class,
+                    () -> StateCodec.getDefault().decodeField("0.96".getBytes(), "score", Score.class));
+        }
+    }
+
+    private static String toJson(StateCodec codec, byte[] state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.copyAsJson(state, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,25 @@
+package informiz.org.chaincode.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+public final class StateKeysTest {
+
+    @Test
+    public void newestFirstIsFixedWidthAndDescending() {
+        Instant older = Instant.ofEpochSecond(1600000000L, 5);
+        Instant newer = Instant.ofEpochSecond(1600000000L, 6);
+        Instant newest = Instant.ofEpochSecond(1700000000L);
+
+        assertEquals(16, StateKeys.newestFirst(older).length());
+        assertEquals(16, StateKeys.newestFirst(newest).length());
+        assertTrue(StateKeys.newestFirst(newer).compareTo(StateKeys.newestFirst(older)) < 0);
+        assertTrue(StateKeys.newestFirst(newest).compareTo(StateKeys.newestFirst(newer)) < 0);
+    }
+}
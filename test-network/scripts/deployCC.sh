@@ -220,7 +220,7 @@ chaincodeQuery() {
     sleep $DELAY
     echo "Attempting to Query peer0.org${ORG} ...$(($(date +%s) - starttime)) secs"
     set -x
-    peer chaincode query -C $CHANNEL_NAME -n informiz -c '{"Args":["queryAllSources", "50", ""]}' >&log.txt
+    peer chaincode query -C $CHANNEL_NAME -n informiz -c '{"Args":["queryAllSources", "50", "", ""]}' >&log.txt
     res=$?
     set +x
 		let rc=$res